@@ -0,0 +1,28 @@
+package dk.betalogger.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск бенчмарков с профилем выделения памяти.
+ * <br/><br/>
+ * Принимает те же параметры командной строки, что и org.openjdk.jmh.Main, и всегда добавляет профилировщик GC:
+ * в результатах появляются gc.alloc.rate.norm(байт на операцию) и количество сборок. Рост выделения памяти на сообщение -
+ * такой же регресс, как падение пропускной способности.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar                                   все бенчмарки
+ * java -jar benchmarks/target/benchmarks.jar Throughput -p sink=FILE           пропускная способность логирования в файл
+ * java -jar benchmarks/target/benchmarks.jar Latency -p pollPeriod=1 -p batchSize=1,100
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
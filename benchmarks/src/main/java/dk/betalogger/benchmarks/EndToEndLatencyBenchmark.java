@@ -0,0 +1,86 @@
+package dk.betalogger.benchmarks;
+
+import dk.betalogger.BetaLogger;
+import dk.betalogger.InputQueueType;
+import dk.betalogger.LoggingType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Задержка от вызова add() до окончания записи сообщения в место назначения.
+ * <br/><br/>
+ * Каждая операция добавляет одно сообщение и ждет, пока счетчик записанных сообщений места назначения
+ * ({@link dk.betalogger.QueueMetricsSnapshot#getWrittenCount()}) его учтет. Режим SampleTime дает распределение задержки
+ * по процентилям. Задержка почти целиком определяется периодом опроса очередей и размером пакета.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndLatencyBenchmark {
+
+    /** Пауза между проверками счетчика записанных сообщений */
+    private static final long CHECK_PERIOD_NANOS = 1_000;
+
+    @Param({"QUEUE", "RING_BUFFER", "STRIPED"})
+    public InputQueueType inputQueueType;
+
+    @Param({"CONSOLE", "FILE", "DB"})
+    public Sink sink;
+
+    /** Период опроса очередей, в милисекундах */
+    @Param({"1", "10"})
+    public long pollPeriod;
+
+    /** Размер пакета записи в БД */
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private BetaLogger logger;
+
+    private LoggingType loggingType;
+
+    /** Количество сообщений, добавленных в логер */
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        logger = new BetaLogger(inputQueueType);
+        sink.configure(logger, pollPeriod, batchSize);
+        loggingType = sink.getLoggingType();
+        logger.start();
+        sequence = logger.getLoggingQueueMetrics(loggingType).getWrittenCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        logger.stop();
+        sink.close();
+    }
+
+    @Benchmark
+    public long addAndWaitWritten() {
+        logger.add("request {} processed in {} ms", ++sequence, 42);
+        long written;
+        while ((written = logger.getLoggingQueueMetrics(loggingType).getWrittenCount()) < sequence) {
+            LockSupport.parkNanos(CHECK_PERIOD_NANOS);
+        }
+        return written;
+    }
+}
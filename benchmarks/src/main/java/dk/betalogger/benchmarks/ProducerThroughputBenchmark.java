@@ -0,0 +1,92 @@
+package dk.betalogger.benchmarks;
+
+import dk.betalogger.BetaLogger;
+import dk.betalogger.InputQueueType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность {@link BetaLogger#add(String, Object...)} при 1..N производителях.
+ * <br/><br/>
+ * Очереди логера ограничены с политикой {@link dk.betalogger.BackpressurePolicy#BLOCK}, поэтому при длительном замере
+ * результат определяется не только стоимостью add(), но и скоростью, с которой место назначения разбирает очередь.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProducerThroughputBenchmark {
+
+    @Param({"QUEUE", "RING_BUFFER", "STRIPED"})
+    public InputQueueType inputQueueType;
+
+    @Param({"CONSOLE", "FILE", "DB"})
+    public Sink sink;
+
+    /** Период опроса очередей, в милисекундах */
+    @Param({"1", "10"})
+    public long pollPeriod;
+
+    /** Размер пакета записи в БД */
+    @Param({"1000"})
+    public int batchSize;
+
+    private BetaLogger logger;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        logger = new BetaLogger(inputQueueType);
+        sink.configure(logger, pollPeriod, batchSize);
+        logger.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        logger.stop();
+        sink.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void add1Thread(Producer producer) {
+        producer.add(logger);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void add4Threads(Producer producer) {
+        producer.add(logger);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void addMaxThreads(Producer producer) {
+        producer.add(logger);
+    }
+
+    /** Состояние потока-производителя: номер очередного сообщения */
+    @State(Scope.Thread)
+    public static class Producer {
+        private long sequence;
+
+        void add(BetaLogger logger) {
+            logger.add("request {} processed in {} ms", ++sequence, 42);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package dk.betalogger.benchmarks;
+
+import dk.betalogger.BackpressurePolicy;
+import dk.betalogger.BetaLogger;
+import dk.betalogger.DbType;
+import dk.betalogger.LoggingType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Места назначения логирования, на которых выполняются бенчмарки.
+ * <br/><br/>
+ * Консоль перенаправляется в пустой поток, чтобы вывод лога не смешивался с выводом JMH и не зависел от терминала.
+ * Вместо сервера БД используется БД H2 в памяти: логер подключается к ней как к MySQL.
+ */
+public enum Sink {
+
+    CONSOLE(LoggingType.CONSOLE) {
+        private PrintStream systemOut;
+
+        @Override
+        void enable(BetaLogger logger, int batchSize) {
+            systemOut = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            logger.setConsoleLogging();
+        }
+
+        @Override
+        void close() {
+            if (systemOut != null) System.setOut(systemOut);
+        }
+    },
+
+    FILE(LoggingType.FILE) {
+        private Path directory;
+
+        @Override
+        void enable(BetaLogger logger, int batchSize) throws IOException {
+            directory = Files.createTempDirectory("betalogger-bench");
+            logger.setFileLogging(directory.resolve("bench.log").toString());
+        }
+
+        @Override
+        void close() throws IOException {
+            if (directory != null) {
+                try (var files = Files.list(directory)) {
+                    for (Path file: (Iterable<Path>) files::iterator) Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(directory);
+            }
+        }
+    },
+
+    DB(LoggingType.DB) {
+        private static final String URL = "jdbc:h2:mem:betalogger;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+        /** Соединение, удерживающее БД в памяти на время бенчмарка */
+        private Connection connection;
+
+        @Override
+        void enable(BetaLogger logger, int batchSize) throws SQLException {
+            connection = DriverManager.getConnection(URL, "sa", "");
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS logging (time TIMESTAMP(3), message VARCHAR)");
+                statement.execute("TRUNCATE TABLE logging");
+            }
+            logger.setDbLogging(DbType.MYSQL, URL, "sa", "", "logging");
+            logger.setDbBatchSize(batchSize);
+        }
+
+        @Override
+        void close() throws SQLException {
+            if (connection != null) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DROP TABLE logging");
+                }
+                connection.close();
+            }
+        }
+    };
+
+    /** Емкость очередей: ограничивает память, если производители обгоняют место назначения */
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+
+    private final LoggingType loggingType;
+
+    Sink(LoggingType loggingType) {
+        this.loggingType = loggingType;
+    }
+
+    LoggingType getLoggingType() {
+        return loggingType;
+    }
+
+    /** Включить вид логирования */
+    abstract void enable(BetaLogger logger, int batchSize) throws Exception;
+
+    /** Освободить ресурсы места назначения после остановки логера */
+    abstract void close() throws Exception;
+
+    /**
+     * Настроить логер на запись только в данное место назначения
+     * @param logger Логер
+     * @param pollPeriod Период опроса очередей, в милисекундах
+     * @param batchSize Размер пакета записи в БД
+     */
+    void configure(BetaLogger logger, long pollPeriod, int batchSize) throws Exception {
+        enable(logger, batchSize);
+        logger.setInputQueuePollPeriod(pollPeriod);
+        logger.setLoggingQueuePollPeriod(loggingType, pollPeriod);
+        logger.setInputQueueCapacity(QUEUE_CAPACITY, BackpressurePolicy.BLOCK);
+        logger.setLoggingQueueCapacity(loggingType, QUEUE_CAPACITY, BackpressurePolicy.BLOCK);
+    }
+}
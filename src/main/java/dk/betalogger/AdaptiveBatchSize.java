@@ -0,0 +1,63 @@
+package dk.betalogger;
+
+/**
+ * Подбор размера порции записи по целевой задержке.
+ * <br/><br/>
+ * Чем больше порция, тем дешевле запись в пересчете на сообщение, но тем дольше сообщения порции ждут окончания ее записи.
+ * После каждой порции размер корректируется по длительности ее записи: если запись заняла больше целевого времени,
+ * размер уменьшается вдвое; если порция была полной(в очереди остались сообщения), а запись заняла меньше половины
+ * целевого времени, размер удваивается. Размер остается в пределах от 1 до максимального.
+ * <br/><br/>
+ * Объект используется только потоком управляющего объекта очереди. Параметры можно менять из любого потока.
+ */
+class AdaptiveBatchSize {
+
+    /** Максимальный размер порции по умолчанию */
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    /** Целевое время записи порции по умолчанию, в милисекундах */
+    static final long DEFAULT_MAX_LATENCY = 100;
+
+    /** Начальный размер порции */
+    private static final int INITIAL_SIZE = 64;
+
+    /** Максимальный размер порции */
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    /** Целевое время записи порции, в наносекундах */
+    private volatile long maxLatencyNanos = DEFAULT_MAX_LATENCY * 1_000_000L;
+
+    /** Текущий размер порции */
+    private int size = INITIAL_SIZE;
+
+    /**
+     * Установить параметры подбора
+     * @param maxSize Максимальный размер порции
+     * @param maxLatency Целевое время записи порции, в милисекундах
+     */
+    void setLimits(int maxSize, long maxLatency) {
+        this.maxSize = Math.max(maxSize, 1);
+        this.maxLatencyNanos = Math.max(maxLatency, 1) * 1_000_000L;
+    }
+
+    /** Размер очередной порции */
+    int get() {
+        return Math.min(size, maxSize);
+    }
+
+    /**
+     * Учесть записанную порцию
+     * @param count Количество сообщений в порции
+     * @param nanos Длительность записи порции
+     */
+    void update(int count, long nanos) {
+        int current = get();
+        if (nanos > maxLatencyNanos) {
+            size = Math.max(current / 2, 1);
+        } else if (count >= current && nanos < maxLatencyNanos / 2) {
+            size = (int) Math.min(current * 2L, maxSize);
+        } else {
+            size = current;
+        }
+    }
+}
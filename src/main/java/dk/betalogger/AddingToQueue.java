@@ -14,4 +14,14 @@ interface AddingToQueue {
      * @param logData Данные для добавления. Должны быть представлены любым подклассом абстрактного класса {@link LogData}
      */
     void offer(LogData logData);
+
+    /**
+     * Принимает ли очередь данные(например, проходят ли они порог уровня важности).
+     * Вызывается управляющим объектом входной очереди перед добавлением.
+     * @param logData Данные для добавления
+     * @return true(данные принимаются)/false(данные не нужны данной очереди)
+     */
+    default boolean accepts(LogData logData) {
+        return true;
+    }
 }
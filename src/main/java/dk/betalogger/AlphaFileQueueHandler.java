@@ -1,60 +1,455 @@
 package dk.betalogger;
 
-import lombok.AccessLevel;
-import lombok.Setter;
-import lombok.experimental.Accessors;
-
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 
-/** Реализация интерфейса для обработки файловой очереди */
-@Accessors(chain = true)
+/**
+ * Реализация интерфейса для обработки файловой очереди.
+ * <br/><br/>
+ * Файл открывается один раз и остается открытым между запусками потока. Файл переоткрывается только при смене имени файла
+ * или способа записи, а также после ошибки ввода-вывода, и закрывается при останове потока.
+ * Строки кодируются в UTF-8 в переиспользуемый прямой буфер, который целиком передается объекту записи в файл {@link FileAppender}.
+ * Строка, сформированная распределителем({@link LogData#encodedLine}), не кодируется заново, а копируется в буфер.
+ * <br/><br/>
+ * Перед каждой записью буфера проверяется необходимость ротации файла: по размеру и/или по времени.
+ * При ротации файл переименовывается в имя_файла.ггггММдд-ЧЧммсс-ССС, и запись продолжается в новый файл с прежним именем.
+ * Сжатие снятого с ротации файла и удаление устаревших файлов выполняет фоновый поток {@link LogFileCompressor}.
+ * <br/><br/>
+ * Сброс данных на диск(fsync) производится согласно политике {@link FileSyncPolicy}. При политике, отличной от
+ * {@link FileSyncPolicy#NONE}, несброшенные данные сбрасываются также перед закрытием файла.
+ * <br/><br/>
+ * В двоичном формате({@link FileFormat#BINARY}) содержимое каждого буфера записи образует самодостаточный блок
+ * {@link BinaryLogFormat}, поэтому ротация, выполняемая перед записью буфера, не разрывает связи между записями.
+ */
 class AlphaFileQueueHandler extends FileQueueHandler {
 
-    @Setter(AccessLevel.PACKAGE) private String fileName;
+    /** Максимальное количество сообщений в порции, выбираемой из очереди */
+    private static final int MAX_BATCH_SIZE = 8192;
+
+    /** Размер буфера записи */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private volatile String fileName;
+
+    /** Формат файла */
+    private volatile FileFormat fileFormat = FileFormat.TEXT;
+
+    /** Кодировщик двоичного формата. Доступен только потоку, обслуживающему очередь */
+    private final BinaryLogFormat binaryFormat = new BinaryLogFormat();
+
+    /** Переиспользуемый буфер записей двоичного формата */
+    private final ByteBuilder record = new ByteBuilder(256);
+
+    /** Признак записи в двоичном формате в открытый файл */
+    private boolean binary = false;
+
+    /** Способ записи в файл */
+    private volatile FileAppenderType appenderType = FileAppenderType.CHANNEL;
+
+    /** Размер сегмента для способа записи {@link FileAppenderType#MAPPED} */
+    private volatile long segmentSize = MappedFileAppender.DEFAULT_SEGMENT_SIZE;
+
+    /** Размер файла, при превышении которого производится ротация. 0 - ротация по размеру не производится */
+    private volatile long maxFileSize = 0;
+
+    /** Период ротации по времени */
+    private volatile RotationPeriod rotationPeriod = RotationPeriod.NONE;
+
+    /** Количество хранимых файлов, снятых с ротации. 0 - хранить все */
+    private volatile int maxHistory = 0;
+
+    /** Момент следующей ротации по времени, в милисекундах. Long.MAX_VALUE - ротация по времени не производится */
+    private long nextRotationTime = Long.MAX_VALUE;
+
+    /** Формат отметки времени в имени файла, снятого с ротации */
+    private static final DateTimeFormatter ROLL_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    /** Политика сброса данных на диск */
+    private volatile FileSyncPolicy syncPolicy = FileSyncPolicy.NONE;
+
+    /** Интервал сброса для политики {@link FileSyncPolicy#INTERVAL}, в милисекундах */
+    private volatile long syncInterval = 1000L;
+
+    /** Признак наличия записанных, но не сброшенных на диск данных */
+    private boolean syncNeed = false;
+
+    /** Момент последнего сброса на диск, в милисекундах */
+    private long lastSyncTime = 0;
+
+    //  Статистика длительности сброса на диск
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong syncTotalNanos = new AtomicLong();
+    private final AtomicLong syncMaxNanos = new AtomicLong();
+    private volatile long syncLastNanos = 0;
+
+    /** Признак необходимости переоткрыть файл(сменилось имя файла или способ записи) */
+    private volatile boolean reopenNeed = false;
+
+    /** Объект записи в открытый файл. Доступен только потоку, обслуживающему очередь */
+    private FileAppender appender;
+
+    /** Буфер записи в файл */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /** Кодировщик строк */
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /** Переиспользуемая строка лога */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /** Формирование строки лога */
+    private final LineEncoder lineEncoder = new LineEncoder();
 
-    private boolean error = false;
+    /** Переиспользуемый символьный буфер, через который строка лога передается кодировщику */
+    private CharBuffer chars = CharBuffer.allocate(256);
 
     AlphaFileQueueHandler() {
         queue = new ConcurrentLinkedQueue<LogData>();
         threadCode = () -> {
 
-            try {
-
-                if (queue.peek() != null) {
-                    FileWriter file = new FileWriter(fileName, true);
+            drainQueue(this::writeBatch, MAX_BATCH_SIZE);
 
-                    LogData logData;
-                    while ((logData = queue.poll()) != null) {
-                        //file.write(logData.getStringForLogging() + "\n");
-                        file.write(LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss.SSS")) + "  " + logData.getStringForLogging() + "\n");
-                    }
-                    file.close();
+            if (syncPolicy == FileSyncPolicy.INTERVAL && System.currentTimeMillis() - lastSyncTime >= syncInterval) {
+                try {
+                    sync();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    //  После ошибки файл будет открыт заново
+                    closeAppender();
                 }
+            }
+
+        };
+        threadStopCode = () -> {
+            closeAppender();
+            closeSpool();
+        };
+    }
 
-                if (error == true) {
-                    //  Сбрасываем флаг ошибки
-                    error = false;
-                    //  Разрешаем прием сообщений в очередь
-                    setAddToQueue(true);
-                    //inputQueueHandler.registerLoggingQueue(queue);
+
+    /** Записать порцию сообщений в файл. При ошибке файл закрывается и будет открыт заново при следующей записи */
+    private void writeBatch(List<LogData> batch) throws IOException {
+        try {
+            openAppender();
+            for (LogData logData: batch) {
+                if (binary) {
+                    encodeRecord(logData);
+                    continue;
+                }
+                byte[] encodedLine = logData.encodedLine;
+                int encodedLength = logData.encodedLength;
+                if (encodedLength >= 0) {
+                    putLine(encodedLine, encodedLength);
+                    continue;
                 }
+                line.setLength(0);
+                lineEncoder.format(logData, line);
+                line.append('\n');
+                encodeLine();
+            }
+            flushBuffer();
+            if (syncPolicy == FileSyncPolicy.BATCH) sync();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            closeAppender();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Определение файла, куда будет идти логирование.
+     * Если имя файла изменилось, то при следующем запуске потока будет открыт новый файл.
+     */
+    @Override
+    AlphaFileQueueHandler setFileName(String fileName) {
+        if (!Objects.equals(this.fileName, fileName)) {
+            this.fileName = fileName;
+            reopenNeed = true;
+        }
+        return this;
+    }
+
+
+    /** Определение формата файла. Файл будет переоткрыт при следующем запуске потока */
+    @Override
+    AlphaFileQueueHandler setFileFormat(FileFormat fileFormat) {
+        if (this.fileFormat != fileFormat) {
+            this.fileFormat = fileFormat;
+            reopenNeed = true;
+        }
+        return this;
+    }
+
+    /** В текстовом формате строка лога может быть взята готовой */
+    @Override
+    boolean usesEncodedLine() {
+        return fileFormat == FileFormat.TEXT;
+    }
+
+
+    /** Определение способа записи в файл. Файл будет переоткрыт при следующем запуске потока */
+    @Override
+    AlphaFileQueueHandler setAppenderType(FileAppenderType appenderType) {
+        if (this.appenderType != appenderType) {
+            this.appenderType = appenderType;
+            reopenNeed = true;
+        }
+        return this;
+    }
+
+
+    /**
+     * Определение размера сегмента для способа записи {@link FileAppenderType#MAPPED}.
+     * Размер ограничивается пределами от 1 байта до Integer.MAX_VALUE: больший сегмент не отображается в память
+     */
+    @Override
+    AlphaFileQueueHandler setSegmentSize(long segmentSize) {
+        segmentSize = Math.min(Math.max(segmentSize, 1), Integer.MAX_VALUE);
+        if (this.segmentSize != segmentSize) {
+            this.segmentSize = segmentSize;
+            reopenNeed = true;
+        }
+        return this;
+    }
 
-            } catch (Exception e) {
+
+    /** Определение правил ротации файла. Применяются при следующем открытии файла */
+    @Override
+    AlphaFileQueueHandler setRotation(long maxFileSize, RotationPeriod rotationPeriod, int maxHistory) {
+        this.maxFileSize = maxFileSize;
+        this.rotationPeriod = rotationPeriod;
+        this.maxHistory = maxHistory;
+        reopenNeed = true;
+        return this;
+    }
+
+
+    /** Определение политики сброса данных на диск. Подхватывается на лету */
+    @Override
+    AlphaFileQueueHandler setSyncPolicy(FileSyncPolicy syncPolicy, long syncInterval) {
+        this.syncInterval = syncInterval;
+        this.syncPolicy = syncPolicy;
+        return this;
+    }
+
+
+    /** Статистика длительности сброса данных на диск */
+    @Override
+    SyncStatistics getSyncStatistics() {
+        return new SyncStatistics(syncCount.get(), syncTotalNanos.get(), syncMaxNanos.get(), syncLastNanos);
+    }
+
+
+    /** Сбросить данные на диск, если есть несброшенные данные, с учетом длительности сброса в статистике */
+    private void sync() throws IOException {
+        if (syncNeed && appender != null) {
+            long start = System.nanoTime();
+            appender.sync();
+            long duration = System.nanoTime() - start;
+
+            syncCount.incrementAndGet();
+            syncTotalNanos.addAndGet(duration);
+            syncMaxNanos.accumulateAndGet(duration, Math::max);
+            syncLastNanos = duration;
+        }
+        syncNeed = false;
+        lastSyncTime = System.currentTimeMillis();
+    }
+
+
+    /** Открыть файл, если он еще не открыт или требуется его переоткрыть */
+    private void openAppender() throws IOException {
+        if (reopenNeed) {
+            reopenNeed = false;
+            closeAppender();
+        }
+        if (appender == null) {
+            switch (appenderType) {
+                case MAPPED:
+                    appender = new MappedFileAppender(Paths.get(fileName), segmentSize);
+                    break;
+                case CHANNEL:
+                default:
+                    appender = new ChannelFileAppender(Paths.get(fileName));
+            }
+            nextRotationTime = computeNextRotationTime(Paths.get(fileName));
+            binary = fileFormat == FileFormat.BINARY;
+        }
+    }
+
+
+    /**
+     * Вычислить момент следующей ротации по времени.
+     * Период отсчитывается от момента последней записи в уже существующий непустой файл, поэтому файл, оставшийся
+     * от прошлого периода, будет снят с ротации при первой же записи.
+     */
+    private long computeNextRotationTime(Path path) throws IOException {
+        long periodTime = System.currentTimeMillis();
+        if (Files.exists(path) && appender.size() > 0) periodTime = Files.getLastModifiedTime(path).toMillis();
+
+        LocalDateTime nextPeriodStart = rotationPeriod.nextPeriodStart(
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(periodTime), ZoneId.systemDefault()));
+        if (nextPeriodStart == null) return Long.MAX_VALUE;
+        return nextPeriodStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+
+    /**
+     * Нужна ли ротация перед записью очередной порции данных
+     * @param pending Размер порции данных
+     */
+    private boolean isRotationNeed(int pending) throws IOException {
+        if (System.currentTimeMillis() >= nextRotationTime) return true;
+        if (maxFileSize > 0) {
+            long size = appender.size();
+            return size > 0 && size + pending > maxFileSize;
+        }
+        return false;
+    }
+
+
+    /**
+     * Ротация файла: текущий файл закрывается и переименовывается, открывается новый файл с прежним именем,
+     * снятый с ротации файл передается на сжатие в фоновый поток
+     */
+    private void rotate() throws IOException {
+        if (syncPolicy != FileSyncPolicy.NONE) sync();
+        appender.close();
+        appender = null;
+
+        Path path = Paths.get(fileName);
+        String rolledName = fileName + "." + LocalDateTime.now().format(ROLL_FORMATTER);
+        Path rolledPath = Paths.get(rolledName);
+        for (int i = 1; Files.exists(rolledPath) || Files.exists(Paths.get(rolledPath + LogFileCompressor.GZIP_SUFFIX)); i++) {
+            rolledPath = Paths.get(rolledName + "." + i);
+        }
+        Files.move(path, rolledPath);
+
+        openAppender();
+        LogFileCompressor.submit(rolledPath, path, maxHistory);
+    }
+
+
+    /** Закрыть файл. Недописанное содержимое буфера отбрасывается */
+    private void closeAppender() {
+        buffer.clear();
+        binaryFormat.endBlock();
+        if (appender != null) {
+            try {
+                if (syncPolicy != FileSyncPolicy.NONE) sync();
+                appender.close();
+            } catch (IOException e) {
                 e.printStackTrace();
-                if (error == false) {
-                    //  Выставляем флаг ошибки
-                    error = true;
-                    //  Блокируем прием сообщений в очередь
-                    setAddToQueue(false);
-                }
             }
+            appender = null;
+        }
+    }
 
-        };
+
+    /** Закодировать строку {@link #line} в буфер записи. При переполнении буфер сбрасывается в файл */
+    private void encodeLine() throws IOException {
+        int length = line.length();
+        if (chars.capacity() < length) chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        chars.clear();
+        line.getChars(0, length, chars.array(), 0);
+        chars.limit(length);
+
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                flushBuffer();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flushBuffer();
+        }
     }
 
 
+    /**
+     * Скопировать в буфер записи строку, сформированную распределителем, и разделитель строк.
+     * При переполнении буфер сбрасывается в файл
+     */
+    private void putLine(byte[] encodedLine, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (buffer.hasRemaining() == false) flushBuffer();
+            int count = Math.min(buffer.remaining(), length - offset);
+            buffer.put(encodedLine, offset, count);
+            offset += count;
+        }
+        if (buffer.hasRemaining() == false) flushBuffer();
+        buffer.put((byte) '\n');
+    }
+
+
+    /**
+     * Закодировать сообщение в двоичном формате в буфер записи.
+     * Если запись не помещается в буфер, то буфер сбрасывается в файл, и запись кодируется заново уже в начало нового блока.
+     */
+    private void encodeRecord(LogData logData) throws IOException {
+        long epochNanos = epochNanosOf(logData);
+        record.reset();
+        binaryFormat.encode(logData, epochNanos, record);
+        if (record.length() > buffer.remaining()) {
+            flushBuffer();
+            binaryFormat.endBlock();
+            record.reset();
+            binaryFormat.encode(logData, epochNanos, record);
+            if (record.length() > buffer.remaining()) {
+                //  Запись больше буфера: пишется в файл отдельным блоком
+                writeBlock(ByteBuffer.wrap(record.array(), 0, record.length()));
+                return;
+            }
+        }
+        buffer.put(record.array(), 0, record.length());
+    }
+
+
+    /** Сбросить содержимое буфера в файл */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeBlock(buffer);
+        buffer.clear();
+    }
+
+
+    /**
+     * Записать данные в файл с предварительной проверкой необходимости ротации.
+     * В двоичном формате данные образуют законченный блок, а в начало нового файла пишется сигнатура формата.
+     */
+    private void writeBlock(ByteBuffer data) throws IOException {
+        if (data.hasRemaining() == false) return;
+        if (isRotationNeed(data.remaining())) rotate();
+        if (binary) {
+            binaryFormat.endBlock();
+            if (appender.size() == 0) appender.write(ByteBuffer.wrap(BinaryLogFormat.MAGIC));
+        }
+        appender.write(data);
+        syncNeed = true;
+    }
+
 }
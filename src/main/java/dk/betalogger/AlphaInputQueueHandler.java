@@ -11,31 +11,61 @@ class AlphaInputQueueHandler extends InputQueueHandler {
     /** Список ссылок на логирующие очереди, в которые будут разбрасываться сообщения из входной очереди  */
     private Set<AddingToQueue> loggingQueueList = new CopyOnWriteArraySet<>();
 
+    /** Снимок списка логирующих очередей. Перебор массива, в отличие от перебора множества, не создает итератор на каждое сообщение */
+    private volatile AddingToQueue[] loggingQueues = new AddingToQueue[0];
+
+    /** Распределение сообщения по логирующим очередям текущего прохода. Получатель сообщений, прошедших подавление */
+    private AddingToQueue[] passQueues;
+    private final AddingToQueue fanOut = this::fanOut;
+
     AlphaInputQueueHandler() {
 
         queue = new ConcurrentLinkedQueue<LogData>();;
         threadCode = () -> {
 
-            if (loggingQueueList.size() > 0) {
+            AddingToQueue[] queues = loggingQueues;
+            if (queues.length > 0) {
+                passQueues = queues;
+                boolean suppress = suppressor.isActive();
                 LogData logData;
                 while ((logData = this.queue.poll()) != null) {
-                    for(AddingToQueue q: loggingQueueList) {
-                        q.offer(logData);
-                    }
+                    if (suppress) suppressor.offer(logData, fanOut);
+                        else fanOut(logData);
                 }
+                if (suppress) suppressor.flushExpired(fanOut);
             }
         };
     }
 
+    /** Разложить сообщение по логирующим очередям текущего прохода */
+    private void fanOut(LogData logData) {
+        encodeLine(logData);
+        //  Каждая логирующая очередь становится владельцем сообщения, а распределитель свое владение освобождает
+        for (AddingToQueue q: passQueues) {
+            if (q.accepts(logData)) {
+                logData.retain(1);
+                q.offer(logData);
+            }
+        }
+        logData.release();
+    }
+
 
     @Override
     void registerLoggingQueue(AddingToQueue queue) {
         loggingQueueList.add(queue);
+        loggingQueues = loggingQueueList.toArray(new AddingToQueue[0]);
     }
 
     @Override
     void unregisterLoggingQueue(AddingToQueue queue) {
         loggingQueueList.remove(queue);
+        loggingQueues = loggingQueueList.toArray(new AddingToQueue[0]);
+    }
+
+    @Override
+    boolean hasLoggingQueues() {
+        return loggingQueues.length > 0;
     }
 }
 
@@ -0,0 +1,15 @@
+package dk.betalogger;
+
+/** Политика поведения очереди ограниченной емкости в момент, когда очередь заполнена */
+public enum BackpressurePolicy {
+    /** Ждать освобождения места в очереди. Добавляющий поток блокируется */
+    BLOCK,
+    /** Ждать освобождения места в очереди не дольше заданного таймаута, после чего сообщение отбрасывается */
+    BLOCK_TIMEOUT,
+    /** Отбросить новое сообщение */
+    DROP_NEWEST,
+    /** Отбросить самое старое сообщение из очереди, а новое добавить */
+    DROP_OLDEST,
+    /** После заполнения очереди наполовину принимать только каждое N-ое сообщение, а при полной очереди отбрасывать новое */
+    SAMPLE
+}
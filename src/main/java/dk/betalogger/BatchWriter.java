@@ -0,0 +1,18 @@
+package dk.betalogger;
+
+import java.util.List;
+
+/**
+ * Интерфейс записи порции сообщений в место назначения логирования(файл, таблицу БД и т.д.).
+ * <br/><br/>
+ * Реализуется управляющими объектами логирующих очередей и передается в {@link QueueHandler#drainQueue(BatchWriter, int)}.
+ * При ошибке реализация должна сама освободить свои ресурсы(закрыть файл, соединение) и выбросить исключение:
+ * порция считается незаписанной.
+ */
+interface BatchWriter {
+    /**
+     * Записать порцию сообщений
+     * @param batch Порция сообщений. Список принадлежит вызывающей стороне и после возврата из метода переиспользуется
+     */
+    void write(List<LogData> batch) throws Exception;
+}
@@ -1,6 +1,14 @@
 package dk.betalogger;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Логер "Бета".
@@ -13,28 +21,77 @@ import java.time.LocalDateTime;
  * betaLogger.setDbLogging(DbType.MySQL, "jdbc:mysql://127.0.0.1:3306/loggingDb", "user", "password", "logging_table");
  * betaLogger.start();
  * </pre>
- * @version 3.0
+ * Видов логирования одного типа может быть несколько: каждый получает свое имя, свою очередь и свой поток записи.
+ * Маршрут вида логирования({@link #setLoggingRoute(String, Predicate)}) отбирает сообщения, которые в него попадают.
+ * <pre>
+ * betaLogger.setFileLogging("audit", "d:\\logs\\audit.log");
+ * betaLogger.setLoggingRoute("audit", Routes.tag("audit"));
+ * betaLogger.setLoggingRoute(LoggingType.FILE, Routes.tag("audit").negate());
+ * </pre>
+ * @version 4.0
  */
 public class BetaLogger {
 
     /** Объект, управляющий входной очередью и реализующий логику распределения сообщений по логирующим очередям */
     private InputQueueHandler inputQueueHandler;
 
-    /** Список ссылок на все управляющие объекты логирующих очередей */
-    private QueueHandler[] loggingQueueHandlerList;
+    /**
+     * Ссылки на все управляющие объекты логирующих очередей по именам видов логирования.
+     * Виды логирования по умолчанию имеют имена типов логирования из перечисления {@link LoggingType}
+     */
+    private final Map<String, QueueHandler> loggingQueueHandlerMap = new ConcurrentHashMap<>();
+
+    /**
+     * Пул переиспользуемых данных для логирования.
+     * Для кольцевого буфера({@link InputQueueType#RING_BUFFER}) владельцами сообщения считаются курсоры всех видов логирования,
+     * когда-либо включенных в логере(см. {@link LogRingBuffer}): пока выключенный вид логирования не читает буфер,
+     * данные в пул не возвращаются
+     */
+    private final LogDataPool logDataPool = new LogDataPool(LogDataPool.DEFAULT_SIZE);
+
+    /**
+     * Минимальный порог уровня важности по включенным видам логирования(номер в перечислении {@link Level}).
+     * Integer.MAX_VALUE - ни один вид логирования не включен
+     */
+    private volatile int enabledLevel = Integer.MAX_VALUE;
 
     /** На приборе логера кнопка Старт */
-    private boolean start = false;
+    private volatile boolean start = false;
+
+    /** Имя, под которым логер зарегистрирован в JMX. null - логер не зарегистрирован */
+    private ObjectName objectName;
 
 
     /** Конструктор */
     public BetaLogger() {
+        this(InputQueueType.QUEUE);
+    }
+
+
+    /**
+     * Конструктор
+     * @param inputQueueType Тип входной очереди из перечисления {@link InputQueueType}
+     */
+    public BetaLogger(InputQueueType inputQueueType) {
+        this(inputQueueType, 0);
+    }
+
+
+    /**
+     * Конструктор
+     * <br/><br/>
+     * При использовании кольцевого буфера({@link InputQueueType#RING_BUFFER}) потоки логирования читают сообщения прямо из буфера,
+     * каждый по своему курсору. Сообщения, опубликованные в буфер до включения вида логирования, в этот вид логирования не попадают.
+     * Если какой-то вид логирования отстал от производителей на всю емкость буфера, то производители ждут его в методе add().
+     * <br/><br/>
+     * При собственных буферах производителей({@link InputQueueType#STRIPED}) емкость задает размер буфера каждого потока,
+     * вызывающего add().
+     * @param inputQueueType Тип входной очереди из перечисления {@link InputQueueType}
+     * @param capacity Емкость кольцевого буфера или буфера производителя. Округляется вверх до степени двойки. 0 - емкость по умолчанию
+     */
+    public BetaLogger(InputQueueType inputQueueType, int capacity) {
         //  Создается объект, управляющий входной очередью и реализующий логику распределения сообщений по логирующим очередям
-        inputQueueHandler = QueueHandlerFactory.createInputQueueHandler();
-        //  Создается список, в котором будут храниться ссылки на все управляющие объекты логирующих очередей.
-        //  Нет необходимости использовать потокобезопастную реализацию(например, Vector), поскольку к данному списку
-        //  имеет доступ только поток Бета-Логера.
-        loggingQueueHandlerList = new QueueHandler[LoggingType.values().length];
+        inputQueueHandler = QueueHandlerFactory.createInputQueueHandler(inputQueueType, capacity);
         //  Обновление состояния логера
         updateState();
     }
@@ -76,7 +133,7 @@ public class BetaLogger {
         //  управляюго объекта логирующей очереди, запускаем или останавливаем функционал управляющих объектов логирующих очередей,
         //  производим регистрацию или снятие с регистрации управляющих объектов логирующих очередей в управляющем объекте
         //  входной очереди.
-        for (QueueHandler queueHandler: loggingQueueHandlerList) {
+        for (QueueHandler queueHandler: loggingQueueHandlerMap.values()) {
             if (queueHandler != null) {
                 if (start) {
                     if (queueHandler.isEnable()) {
@@ -105,26 +162,39 @@ public class BetaLogger {
             }
         }
 
-
+        //  Пересчет порога уровня важности, по которому методы add() отсекают ненужные сообщения
+        updateEnabledLevel();
+        //  Включение общей для текстовых видов логирования строки лога
+        updateSharedEncoding();
     }
 
 
 
     /** Включить логирование на консоль */
     public void setConsoleLogging() {
+        setConsoleLogging(LoggingType.CONSOLE.name());
+    }
+
+
+    /**
+     * Включить именованное логирование на консоль(см. {@link #setFileLogging(String, String)})
+     * @param sinkName Имя вида логирования
+     */
+    public void setConsoleLogging(String sinkName) {
 
         QueueHandler consoleQueueHandler;
 
         //  Если логирование в консоль до сих пор еще не включалось, то создаем ссответствующий объект
-        //  и сохраняем ссылку на него во внутреннем массиве бета-логера
-        if (loggingQueueHandlerList[LoggingType.CONSOLE.ordinal()] == null) {
+        //  и сохраняем ссылку на него во внутреннем списке бета-логера
+        if (loggingQueueHandlerMap.get(sinkName) == null) {
             //  Создается управляющий объект логирующей очереди на консоль
             consoleQueueHandler = QueueHandlerFactory.createConsoleQueueHandler();
             //  Созданный управляющий объект логирующей очереди сохраняется в объекте Бета-логера
-            loggingQueueHandlerList[LoggingType.CONSOLE.ordinal()] = consoleQueueHandler;
+            loggingQueueHandlerMap.put(sinkName, consoleQueueHandler);
         } else {
             //  Получаем управляющий объект уже когда то созданный
-            consoleQueueHandler = loggingQueueHandlerList[LoggingType.CONSOLE.ordinal()];
+            consoleQueueHandler = sinkOf(sinkName, ConsoleQueueHandler.class);
+            if (consoleQueueHandler == null) return;
         }
 
         //  "Включить" управляющий объект
@@ -138,26 +208,93 @@ public class BetaLogger {
     }
 
 
+    /**
+     * Установить способ вывода в консоль.
+     * <br/><br/>
+     * {@link ConsoleMode#BUFFERED} выводит каждую порцию сообщений одной операцией записи в дескриптор стандартного вывода,
+     * без блокировки и сброса System.out на каждую строку. Подходит для контейнеров, где стандартный вывод - основной канал
+     * доставки логов. Подмену System.out в этом режиме логер не учитывает.
+     * Действует, если логирование в консоль уже включалось({@link #setConsoleLogging()}).
+     * @param consoleMode Способ вывода из перечисления {@link ConsoleMode}
+     */
+    public void setConsoleMode(ConsoleMode consoleMode) {
+        setConsoleMode(LoggingType.CONSOLE.name(), consoleMode);
+    }
+
+
+    /**
+     * Установить способ вывода консольного вида логирования sinkName(см. {@link #setConsoleMode(ConsoleMode)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param consoleMode Способ вывода из перечисления {@link ConsoleMode}
+     */
+    public void setConsoleMode(String sinkName, ConsoleMode consoleMode) {
+
+        ConsoleQueueHandler consoleQueueHandler = sinkOf(sinkName, ConsoleQueueHandler.class);
+        if (consoleQueueHandler != null) {
+            consoleQueueHandler.setConsoleMode(consoleMode);
+            updateSharedEncoding();
+        }
+    }
+
+
+    /**
+     * Выводить сообщения с уровнем важности не ниже заданного в стандартный поток ошибок.
+     * Порядок строк между стандартным выводом и потоком ошибок сохраняется.
+     * @param level Порог уровня важности. null - все сообщения выводятся в стандартный вывод
+     */
+    public void setConsoleStderrLevel(Level level) {
+        setConsoleStderrLevel(LoggingType.CONSOLE.name(), level);
+    }
+
+
+    /**
+     * Задать порог уровня важности, начиная с которого консольный вид логирования sinkName выводит сообщения в стандартный поток ошибок(см. {@link #setConsoleStderrLevel(Level)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param level Порог уровня важности. null - все сообщения выводятся в стандартный вывод
+     */
+    public void setConsoleStderrLevel(String sinkName, Level level) {
+
+        ConsoleQueueHandler consoleQueueHandler = sinkOf(sinkName, ConsoleQueueHandler.class);
+        if (consoleQueueHandler != null) {
+            consoleQueueHandler.setStderrLevel(level);
+        }
+    }
+
+
     /**
      * Включить логирование в файл.
      * @param fileName Имя файла лога
      */
     public void setFileLogging(String fileName) {
+        setFileLogging(LoggingType.FILE.name(), fileName);
+    }
+
+
+    /**
+     * Включить именованное логирование в файл.
+     * <br/><br/>
+     * Именованных видов логирования может быть сколько угодно, в том числе одного типа. У каждого своя очередь
+     * и свой поток записи, поэтому, например, объемные категории сообщений можно писать в отдельные файлы на разных дисках
+     * параллельно. Имя вида логирования указывается во всех остальных методах настройки вместо типа логирования.
+     * Виды логирования по умолчанию имеют имена типов логирования("CONSOLE", "FILE", "DB", "NETWORK").
+     * Имя, уже занятое видом логирования другого типа, повторно не используется.
+     * @param sinkName Имя вида логирования
+     * @param fileName Имя файла лога
+     */
+    public void setFileLogging(String sinkName, String fileName) {
 
         FileQueueHandler fileQueueHandler;
 
-        if (loggingQueueHandlerList[LoggingType.FILE.ordinal()] == null) {
+        if (loggingQueueHandlerMap.get(sinkName) == null) {
             //  Файловое логирование еще не использовалось.
             //  Создается управляющий объект, содержащий в себе логирующую очередь для логирования в файл и код, обслуживающий эту очередь.
             fileQueueHandler = QueueHandlerFactory.createFileQueueHandler();
-            //  Регистрация управляющего объекта для логирования в файл во внутреннем массиве бета-логера
-            loggingQueueHandlerList[LoggingType.FILE.ordinal()] = fileQueueHandler;
+            //  Регистрация управляющего объекта для логирования в файл во внутреннем списке бета-логера
+            loggingQueueHandlerMap.put(sinkName, fileQueueHandler);
         } else {
-            //  Файловое логирование уже используется, т.к. соответствующий управляющий объект существует во внутреннем массиве бета-логера
-            //  Нисходящее преобразование
-            //  Преобразование будет абсолютно безопасным, поскольку точно известно, что по индексу LoggingType.FILE.ordinal()
-            //  может находиться только ссылка на объект, реализующий интерфейс FileQueueHandler и больше ничего.
-            fileQueueHandler = (FileQueueHandler) loggingQueueHandlerList[LoggingType.FILE.ordinal()];
+            //  Файловое логирование уже используется, т.к. соответствующий управляющий объект существует во внутреннем списке бета-логера
+            fileQueueHandler = sinkOf(sinkName, FileQueueHandler.class);
+            if (fileQueueHandler == null) return;
         }
 
         //  Инициализацция имени файла, куда будут записываться сообщения из логирующей очереди
@@ -171,6 +308,166 @@ public class BetaLogger {
     }
 
 
+    /**
+     * Установить способ записи в файл.
+     * <br/><br/>
+     * Действует, если логирование в файл уже включалось({@link #setFileLogging(String)}). Файл будет переоткрыт.
+     * При способе записи {@link FileAppenderType#MAPPED} файл обрезается до реальной длины при останове логера или
+     * отключении логирования в файл.
+     * @param appenderType Способ записи из перечисления {@link FileAppenderType}
+     */
+    public void setFileAppender(FileAppenderType appenderType) {
+        setFileAppender(LoggingType.FILE.name(), appenderType);
+    }
+
+
+    /**
+     * Установить способ записи в файл для файлового вида логирования sinkName(см. {@link #setFileAppender(FileAppenderType)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param appenderType Способ записи из перечисления {@link FileAppenderType}
+     */
+    public void setFileAppender(String sinkName, FileAppenderType appenderType) {
+
+        FileQueueHandler fileQueueHandler = sinkOf(sinkName, FileQueueHandler.class);
+        if (fileQueueHandler != null) {
+            fileQueueHandler.setAppenderType(appenderType);
+        }
+    }
+
+
+    /**
+     * Установить формат файла лога.
+     * <br/><br/>
+     * Двоичный формат({@link FileFormat#BINARY}) занимает в несколько раз меньше места, особенно для сообщений, переданных
+     * шаблоном с параметрами. Он переводится в текстовый формат утилитой {@link BinaryLogDecoder}.
+     * Действует, если логирование в файл уже включалось({@link #setFileLogging(String)}). Файл будет переоткрыт.
+     * Смешивать форматы в одном файле нельзя, поэтому при смене формата следует сменить и имя файла.
+     * @param fileFormat Формат из перечисления {@link FileFormat}
+     */
+    public void setFileFormat(FileFormat fileFormat) {
+        setFileFormat(LoggingType.FILE.name(), fileFormat);
+    }
+
+
+    /**
+     * Установить формат файла лога файлового вида логирования sinkName(см. {@link #setFileFormat(FileFormat)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param fileFormat Формат из перечисления {@link FileFormat}
+     */
+    public void setFileFormat(String sinkName, FileFormat fileFormat) {
+
+        FileQueueHandler fileQueueHandler = sinkOf(sinkName, FileQueueHandler.class);
+        if (fileQueueHandler != null) {
+            fileQueueHandler.setFileFormat(fileFormat);
+            updateSharedEncoding();
+        }
+    }
+
+
+    /**
+     * Установить размер сегмента файла для способа записи {@link FileAppenderType#MAPPED}
+     * @param segmentSize Размер сегмента в байтах, от 1 до Integer.MAX_VALUE. Значения вне этих пределов приводятся к ближайшему допустимому
+     */
+    public void setFileSegmentSize(long segmentSize) {
+        setFileSegmentSize(LoggingType.FILE.name(), segmentSize);
+    }
+
+
+    /**
+     * Установить размер отображаемого сегмента файла({@link FileAppenderType#MAPPED}) файлового вида логирования sinkName(см. {@link #setFileSegmentSize(long)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param segmentSize Размер сегмента в байтах, от 1 до Integer.MAX_VALUE. Значения вне этих пределов приводятся к ближайшему допустимому
+     */
+    public void setFileSegmentSize(String sinkName, long segmentSize) {
+
+        FileQueueHandler fileQueueHandler = sinkOf(sinkName, FileQueueHandler.class);
+        if (fileQueueHandler != null) {
+            fileQueueHandler.setSegmentSize(segmentSize);
+        }
+    }
+
+
+    /**
+     * Установить правила ротации файла лога.
+     * <br/><br/>
+     * Снятый с ротации файл получает имя имя_файла.ггггММдд-ЧЧммсс-ССС и сжимается в gzip фоновым потоком с минимальным приоритетом.
+     * Действует, если логирование в файл уже включалось({@link #setFileLogging(String)}).
+     * @param maxFileSize Размер файла в байтах, при превышении которого производится ротация. 0 - ротация по размеру не производится
+     * @param rotationPeriod Период ротации по времени из перечисления {@link RotationPeriod}
+     * @param maxHistory Количество хранимых файлов, снятых с ротации. 0 - хранить все
+     */
+    public void setFileRotation(long maxFileSize, RotationPeriod rotationPeriod, int maxHistory) {
+        setFileRotation(LoggingType.FILE.name(), maxFileSize, rotationPeriod, maxHistory);
+    }
+
+
+    /**
+     * Установить правила ротации файла лога файлового вида логирования sinkName(см. {@link #setFileRotation(long, RotationPeriod, int)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param maxFileSize Размер файла в байтах, при превышении которого производится ротация. 0 - ротация по размеру не производится
+     * @param rotationPeriod Период ротации по времени из перечисления {@link RotationPeriod}
+     * @param maxHistory Количество хранимых файлов, снятых с ротации. 0 - хранить все
+     */
+    public void setFileRotation(String sinkName, long maxFileSize, RotationPeriod rotationPeriod, int maxHistory) {
+
+        FileQueueHandler fileQueueHandler = sinkOf(sinkName, FileQueueHandler.class);
+        if (fileQueueHandler != null) {
+            fileQueueHandler.setRotation(maxFileSize, rotationPeriod, maxHistory);
+        }
+    }
+
+
+    /**
+     * Установить политику сброса данных файла лога на диск(fsync).
+     * <br/><br/>
+     * {@link FileSyncPolicy#NONE} подходит для отладочных логов, {@link FileSyncPolicy#BATCH} - для журналов аудита,
+     * {@link FileSyncPolicy#INTERVAL} ограничивает объем данных, теряемых при сбое ОС, заданным интервалом времени.
+     * Фактическую цену выбранной политики показывает {@link #getFileSyncStatistics()}.
+     * @param syncPolicy Политика из перечисления {@link FileSyncPolicy}
+     * @param syncInterval Интервал сброса для политики {@link FileSyncPolicy#INTERVAL}, в милисекундах
+     */
+    public void setFileSync(FileSyncPolicy syncPolicy, long syncInterval) {
+        setFileSync(LoggingType.FILE.name(), syncPolicy, syncInterval);
+    }
+
+
+    /**
+     * Установить политику сброса на диск(fsync) файла лога файлового вида логирования sinkName(см. {@link #setFileSync(FileSyncPolicy, long)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param syncPolicy Политика из перечисления {@link FileSyncPolicy}
+     * @param syncInterval Интервал сброса для политики {@link FileSyncPolicy#INTERVAL}, в милисекундах
+     */
+    public void setFileSync(String sinkName, FileSyncPolicy syncPolicy, long syncInterval) {
+
+        FileQueueHandler fileQueueHandler = sinkOf(sinkName, FileQueueHandler.class);
+        if (fileQueueHandler != null) {
+            fileQueueHandler.setSyncPolicy(syncPolicy, syncInterval);
+        }
+    }
+
+
+    /**
+     * Статистика длительности сброса данных файла лога на диск
+     * @return Снимок статистики или null, если логирование в файл не включалось
+     */
+    public SyncStatistics getFileSyncStatistics() {
+        return getFileSyncStatistics(LoggingType.FILE.name());
+    }
+
+
+    /**
+     * Статистика длительности сброса на диск файла лога файлового вида логирования sinkName(см. {@link #getFileSyncStatistics()})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @return Снимок статистики или null, если логирование в файл не включалось
+     */
+    public SyncStatistics getFileSyncStatistics(String sinkName) {
+
+        FileQueueHandler fileQueueHandler = sinkOf(sinkName, FileQueueHandler.class);
+        if (fileQueueHandler != null) return fileQueueHandler.getSyncStatistics();
+            else return null;
+    }
+
+
     /**
      * Включить логирование в таблицу БД.
      * <br/><br/>
@@ -185,19 +482,29 @@ public class BetaLogger {
      * @param table Таблица, в которую будет осуществляться логирование
      */
     public void setDbLogging(DbType dbType, String dbUrl, String user, String password, String table) {
+        setDbLogging(LoggingType.DB.name(), dbType, dbUrl, user, password, table);
+    }
+
+
+    /**
+     * Включить именованное логирование в таблицу БД(см. {@link #setDbLogging(DbType, String, String, String, String)}
+     * и {@link #setFileLogging(String, String)})
+     * @param sinkName Имя вида логирования
+     */
+    public void setDbLogging(String sinkName, DbType dbType, String dbUrl, String user, String password, String table) {
 
         DbQueueHandler dbQueueHandler = null;
 
-        if (loggingQueueHandlerList[LoggingType.DB.ordinal()] == null) {
+        if (loggingQueueHandlerMap.get(sinkName) == null) {
             if (dbType.registerDriver()) {
                 //  Создается управляющий объект логирующей очереди БД в зависимости от типа БД
                 dbQueueHandler = QueueHandlerFactory.createDbQueueHandler(dbType);
 
                 //  Созданный управляющий объект логирующей очереди БД сохраняется в объекте Бета-логера
-                loggingQueueHandlerList[LoggingType.DB.ordinal()] = dbQueueHandler;
+                loggingQueueHandlerMap.put(sinkName, dbQueueHandler);
             }
         } else {
-            dbQueueHandler = (DbQueueHandler) loggingQueueHandlerList[LoggingType.DB.ordinal()];
+            dbQueueHandler = sinkOf(sinkName, DbQueueHandler.class);
         }
 
         if (dbQueueHandler != null) {
@@ -216,81 +523,964 @@ public class BetaLogger {
 
 
     /**
-     * Отключение логирования заданного типа
-     * @param loggingType Тип логирования {@link LoggingType}
+     * Установить размер пакета записи в БД.
+     * <br/><br/>
+     * Сообщения, выбранные из очереди, отправляются в БД пакетами указанного размера, каждый пакет фиксируется одной транзакцией.
+     * Действует, если логирование в БД уже включалось({@link #setDbLogging(DbType, String, String, String, String) setDbLogging()}).
+     * @param batchSize Количество сообщений в пакете
      */
-    public void unsetLogging(LoggingType loggingType) {
+    public void setDbBatchSize(int batchSize) {
+        setDbBatchSize(LoggingType.DB.name(), batchSize);
+    }
 
-        if (loggingQueueHandlerList[loggingType.ordinal()] != null) {
-            loggingQueueHandlerList[loggingType.ordinal()].setEnable(false);
-            updateState();
+
+    /**
+     * Установить размер пакета записи в БД для вида логирования sinkName(см. {@link #setDbBatchSize(int)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param batchSize Количество сообщений в пакете
+     */
+    public void setDbBatchSize(String sinkName, int batchSize) {
+
+        DbQueueHandler dbQueueHandler = sinkOf(sinkName, DbQueueHandler.class);
+        if (dbQueueHandler != null) {
+            dbQueueHandler.setBatchSize(batchSize);
         }
     }
 
-    /** Запустить логер */
-    public void start() {
-        start = true;
-        updateState();
+
+    /**
+     * Установить формат данных команды COPY для логирования в PostgreSQL.
+     * <br/><br/>
+     * Действует, если включено логирование в БД типа {@link DbType#POSTGRESQL}.
+     * @param copyFormat Формат из перечисления {@link CopyFormat}
+     */
+    public void setDbCopyFormat(CopyFormat copyFormat) {
+        setDbCopyFormat(LoggingType.DB.name(), copyFormat);
     }
 
-    /** Остановить логер */
-    public void stop() {
-        start = false;
+
+    /**
+     * Установить формат данных команды COPY для логирования в PostgreSQL с именем sinkName(см. {@link #setDbCopyFormat(CopyFormat)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param copyFormat Формат из перечисления {@link CopyFormat}
+     */
+    public void setDbCopyFormat(String sinkName, CopyFormat copyFormat) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler instanceof PostgreDbQueueHandler) {
+            ((PostgreDbQueueHandler) queueHandler).setCopyFormat(copyFormat);
+        }
+    }
+
+
+    /**
+     * Включить логирование по сети.
+     * <br/><br/>
+     * Сообщения передаются получателю(локальному агенту сбора логов, серверу syslog) через неблокирующий канал: порция сообщений
+     * упаковывается в минимальное количество операций записи по TCP или датаграмм UDP. Соединение устанавливается и
+     * восстанавливается потоком вида логирования, распределитель входной очереди его не ждет. Пока получатель недоступен,
+     * сообщения теряются с блокировкой приема до восстановления связи, либо копятся в спуле
+     * ({@link #setLoggingSpool(LoggingType, String, long)}).
+     * @param protocol Транспорт из перечисления {@link NetworkProtocol}
+     * @param host Имя или адрес узла получателя
+     * @param port Порт получателя
+     */
+    public void setNetworkLogging(NetworkProtocol protocol, String host, int port) {
+        setNetworkLogging(LoggingType.NETWORK.name(), protocol, host, port);
+    }
+
+
+    /**
+     * Включить именованное логирование по сети(см. {@link #setNetworkLogging(NetworkProtocol, String, int)}
+     * и {@link #setFileLogging(String, String)})
+     * @param sinkName Имя вида логирования
+     */
+    public void setNetworkLogging(String sinkName, NetworkProtocol protocol, String host, int port) {
+
+        NetworkQueueHandler networkQueueHandler;
+
+        if (loggingQueueHandlerMap.get(sinkName) == null) {
+            networkQueueHandler = QueueHandlerFactory.createNetworkQueueHandler();
+            loggingQueueHandlerMap.put(sinkName, networkQueueHandler);
+        } else {
+            networkQueueHandler = sinkOf(sinkName, NetworkQueueHandler.class);
+            if (networkQueueHandler == null) return;
+        }
+
+        //  Новый адрес применяется со следующей передачи: соединение будет установлено заново
+        networkQueueHandler.setAddress(protocol, host, port);
+
+        networkQueueHandler.setEnable(true);
+
         updateState();
     }
 
+
     /**
-     * Добавить во входную очередь данные для логирования
-     * @param data Данные для логирования построенные на базе абстрактного класса {@link LogData}
+     * Установить формат сообщений, передаваемых по сети.
+     * Действует, если логирование по сети уже включалось({@link #setNetworkLogging(NetworkProtocol, String, int)}).
+     * @param framing Формат из перечисления {@link NetworkFraming}
      */
-    public void add(LogData data) {
-        inputQueueHandler.offer(data);
+    public void setNetworkFraming(NetworkFraming framing) {
+        setNetworkFraming(LoggingType.NETWORK.name(), framing);
+    }
+
+
+    /**
+     * Установить формат сообщений сетевого вида логирования sinkName(см. {@link #setNetworkFraming(NetworkFraming)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param framing Формат из перечисления {@link NetworkFraming}
+     */
+    public void setNetworkFraming(String sinkName, NetworkFraming framing) {
+
+        NetworkQueueHandler networkQueueHandler = sinkOf(sinkName, NetworkQueueHandler.class);
+        if (networkQueueHandler != null) {
+            networkQueueHandler.setFraming(framing);
+            updateSharedEncoding();
+        }
     }
 
+
     /**
-     * Добавить во входную очередь данные для логирования
-     * @param data Строка для логирования
+     * Установить поля заголовка сообщений syslog({@link NetworkFraming#SYSLOG}).
+     * Действует, если логирование по сети уже включалось({@link #setNetworkLogging(NetworkProtocol, String, int)}).
+     * @param facility Источник сообщений(facility) от 0 до 23. По умолчанию 1 - сообщения пользовательского уровня
+     * @param appName Имя приложения(APP-NAME). Непечатные символы и символы не ASCII заменяются на '_'
      */
-    public void add(String data) {
+    public void setNetworkSyslog(int facility, String appName) {
+        setNetworkSyslog(LoggingType.NETWORK.name(), facility, appName);
+    }
 
-        LogData logData = new LogData() {
-            private String s = data;
-            @Override
-            public String getStringForLogging() {
-                return s;
-            }
-        };
 
-        inputQueueHandler.offer(logData);
+    /**
+     * Установить поля заголовка syslog сетевого вида логирования sinkName(см. {@link #setNetworkSyslog(int, String)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param facility Источник сообщений(facility) от 0 до 23. По умолчанию 1 - сообщения пользовательского уровня
+     * @param appName Имя приложения(APP-NAME). Непечатные символы и символы не ASCII заменяются на '_'
+     */
+    public void setNetworkSyslog(String sinkName, int facility, String appName) {
+
+        NetworkQueueHandler networkQueueHandler = sinkOf(sinkName, NetworkQueueHandler.class);
+        if (networkQueueHandler != null) {
+            networkQueueHandler.setSyslog(facility, appName);
+        }
+    }
+
+
+    /**
+     * Установить предельный размер датаграммы для транспорта {@link NetworkProtocol#UDP}.
+     * По умолчанию 1472 байта - датаграмма, не требующая фрагментации в сети Ethernet. Для локального агента
+     * можно задать больше(до 65507), чтобы порция уходила меньшим количеством датаграмм.
+     * @param datagramSize Размер датаграммы в байтах
+     */
+    public void setNetworkDatagramSize(int datagramSize) {
+        setNetworkDatagramSize(LoggingType.NETWORK.name(), datagramSize);
     }
 
 
     /**
-     * Установить период опроса логирующей очереди
-     * @param loggingType Тип логирования из перечисления {@link LoggingType}
-     * @param pollPeriod Период опроса очереди в милисекундах
+     * Установить предельный размер датаграммы UDP сетевого вида логирования sinkName(см. {@link #setNetworkDatagramSize(int)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param datagramSize Размер датаграммы в байтах
      */
-    public void setLoggingQueuePollPeriod(LoggingType loggingType, long pollPeriod) {
+    public void setNetworkDatagramSize(String sinkName, int datagramSize) {
 
-        QueueHandler queueHandler = loggingQueueHandlerList[loggingType.ordinal()];
-        if (queueHandler != null) {
-            queueHandler.setPollPeriod(pollPeriod);
-            queueHandler.setThreadRestartNeed(true);
-            updateState();
+        NetworkQueueHandler networkQueueHandler = sinkOf(sinkName, NetworkQueueHandler.class);
+        if (networkQueueHandler != null) {
+            networkQueueHandler.setDatagramSize(datagramSize);
         }
     }
 
 
     /**
-     * Установить период опроса входной очереди
-     * @param pollPeriod Период опроса в милисекундах
+     * Включить логирование в подключаемое место назначения.
+     * <br/><br/>
+     * Место назначения регистрируется как вид логирования с именем {@link LogSink#getName()}. Если вид логирования с таким
+     * именем уже есть, то он включается, только если это то же самое место назначения.
+     * @param sink Место назначения логирования
      */
-    public void setInputQueuePollPeriod(long pollPeriod) {
+    public void setSinkLogging(LogSink sink) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sink.getName());
+        if (queueHandler == null) {
+            queueHandler = QueueHandlerFactory.createSinkQueueHandler(sink);
+            loggingQueueHandlerMap.put(sink.getName(), queueHandler);
+        } else {
+            SinkQueueHandler sinkQueueHandler = sinkOf(sink.getName(), SinkQueueHandler.class);
+            if (sinkQueueHandler == null) return;
+            if (sinkQueueHandler.getSink() != sink) {
+                System.out.println("BetaLogger: logging " + sink.getName() + " is used by another sink");
+                return;
+            }
+        }
+
+        queueHandler.setEnable(true);
 
-        inputQueueHandler.setPollPeriod(pollPeriod);
-        inputQueueHandler.setThreadRestartNeed(true);
         updateState();
+    }
+
+
+    /**
+     * Включить логирование в подключаемое место назначения, заданное именем.
+     * <br/><br/>
+     * Если место назначения с таким именем еще не регистрировалось, то оно ищется среди реализаций {@link LogSink},
+     * объявленных в META-INF/services/dk.betalogger.LogSink, через {@link java.util.ServiceLoader}.
+     * @param sinkName Имя вида логирования({@link LogSink#getName()})
+     */
+    public void setSinkLogging(String sinkName) {
+
+        if (loggingQueueHandlerMap.get(sinkName) == null) {
+            LogSink sink = QueueHandlerFactory.loadSink(sinkName);
+            if (sink == null) {
+                System.out.println("BetaLogger: sink " + sinkName + " not found");
+                return;
+            }
+            setSinkLogging(sink);
+        } else {
+            SinkQueueHandler sinkQueueHandler = sinkOf(sinkName, SinkQueueHandler.class);
+            if (sinkQueueHandler != null) {
+                setSinkLogging(sinkQueueHandler.getSink());
+            }
+        }
+    }
+
+
+    /**
+     * Установить параметры подбора размера порции для подключаемого места назначения.
+     * <br/><br/>
+     * Размер порции подбирается так, чтобы запись порции укладывалась в целевое время: при превышении размер уменьшается вдвое,
+     * при накопившейся очереди и записи быстрее половины целевого времени - удваивается.
+     * По умолчанию максимальный размер порции 4096 сообщений, целевое время 100 мс.
+     * @param sinkName Имя вида логирования({@link LogSink#getName()})
+     * @param maxBatchSize Максимальный размер порции
+     * @param maxLatency Целевое время записи порции, в милисекундах
+     */
+    public void setSinkBatching(String sinkName, int maxBatchSize, long maxLatency) {
+
+        SinkQueueHandler sinkQueueHandler = sinkOf(sinkName, SinkQueueHandler.class);
+        if (sinkQueueHandler != null) {
+            sinkQueueHandler.setBatching(maxBatchSize, maxLatency);
+        }
+    }
 
+
+    /**
+     * Включить спул для логирования заданного типа.
+     * <br/><br/>
+     * Пока место назначения логирования недоступно, сообщения не теряются, а дописываются в локальный файл спула.
+     * После восстановления содержимое спула записывается в место назначения раньше новых сообщений.
+     * Гарантия доставки - "хотя бы один раз": при завершении приложения до полной обработки спула часть сообщений
+     * будет записана повторно.
+     * @param loggingType Тип логирования {@link LoggingType}
+     * @param spoolFileName Имя файла спула. null - отключить спул
+     * @param maxSpoolSize Предельный размер файла спула в байтах. Не поместившиеся в спул сообщения отбрасываются
+     */
+    public void setLoggingSpool(LoggingType loggingType, String spoolFileName, long maxSpoolSize) {
+        setLoggingSpool(loggingType.name(), spoolFileName, maxSpoolSize);
+    }
+
+
+    /**
+     * Включить спул вида логирования sinkName(см. {@link #setLoggingSpool(LoggingType, String, long)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param spoolFileName Имя файла спула. null - отключить спул
+     * @param maxSpoolSize Предельный размер файла спула в байтах. Не поместившиеся в спул сообщения отбрасываются
+     */
+    public void setLoggingSpool(String sinkName, String spoolFileName, long maxSpoolSize) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setSpool(spoolFileName, maxSpoolSize);
+        }
+    }
+
+
+    /**
+     * Установить задержку повторных попыток записи после ошибки для логирования заданного типа.
+     * Задержка удваивается после каждой неудачной попытки. Действует, если включен спул(см. {@link #setLoggingSpool(LoggingType, String, long)})
+     * @param loggingType Тип логирования {@link LoggingType}
+     * @param retryDelayMin Начальная задержка в милисекундах
+     * @param retryDelayMax Максимальная задержка в милисекундах
+     */
+    public void setLoggingRetryDelay(LoggingType loggingType, long retryDelayMin, long retryDelayMax) {
+        setLoggingRetryDelay(loggingType.name(), retryDelayMin, retryDelayMax);
+    }
+
+
+    /**
+     * Установить задержку повторных попыток записи после ошибки для вида логирования sinkName(см. {@link #setLoggingRetryDelay(LoggingType, long, long)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param retryDelayMin Начальная задержка в милисекундах
+     * @param retryDelayMax Максимальная задержка в милисекундах
+     */
+    public void setLoggingRetryDelay(String sinkName, long retryDelayMin, long retryDelayMax) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setRetryDelayMin(retryDelayMin);
+            queueHandler.setRetryDelayMax(Math.max(retryDelayMin, retryDelayMax));
+        }
+    }
+
+
+    /**
+     * Отключение логирования заданного типа
+     * @param loggingType Тип логирования {@link LoggingType}
+     */
+    public void unsetLogging(LoggingType loggingType) {
+        unsetLogging(loggingType.name());
+    }
+
+
+    /**
+     * Отключить вид логирования sinkName(см. {@link #unsetLogging(LoggingType)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     */
+    public void unsetLogging(String sinkName) {
+
+        if (loggingQueueHandlerMap.get(sinkName) != null) {
+            loggingQueueHandlerMap.get(sinkName).setEnable(false);
+            updateState();
+        }
+    }
+
+    /** Запустить логер */
+    public void start() {
+        start = true;
+        updateState();
+    }
+
+    /** Остановить логер */
+    public void stop() {
+        start = false;
+        updateState();
+    }
+
+    /**
+     * Добавить во входную очередь данные для логирования
+     * <br/><br/>
+     * Данные, полученные из {@link #newLogData()}, передаются в очередь как есть. Собственный объект вызывающей стороны
+     * передается в обертке, в которой логер фиксирует момент события, поэтому такой объект можно передавать в логер повторно.
+     * Маршруты и подключаемые места назначения получают обертку: текст, уровень важности и тег у нее - как у исходного объекта.
+     * @param data Данные для логирования построенные на базе абстрактного класса {@link LogData}
+     */
+    public void add(LogData data) {
+        if (isEnabled(data.getLevel())) {
+            offer(data instanceof MutableLogData ? data : new WrappedLogData(data));
+        } else {
+            data.release();
+        }
+    }
+
+    /**
+     * Добавить во входную очередь данные для логирования с уровнем важности {@link Level#INFO}
+     * @param data Строка для логирования
+     */
+    public void add(String data) {
+        add(Level.INFO, data);
+    }
+
+    /**
+     * Добавить во входную очередь данные для логирования
+     * @param level Уровень важности
+     * @param data Строка для логирования
+     */
+    public void add(Level level, String data) {
+        if (isEnabled(level)) {
+            offer(newLogData().setLevel(level).append(data));
+        }
+    }
+
+
+    /**
+     * Добавить во входную очередь сообщение в виде шаблона с параметрами с уровнем важности {@link Level#INFO}.
+     * <br/><br/>
+     * Места подстановки {} в шаблоне по порядку заменяются значениями параметров. Текст формируется потоком логирования,
+     * а не вызывающим потоком. Если ни один вид логирования не включен, то сообщение отбрасывается без формирования.
+     * Параметры не должны изменяться после вызова: их значения будут прочитаны позже, другим потоком.
+     * @param pattern Шаблон сообщения
+     * @param args Параметры
+     */
+    public void add(String pattern, Object... args) {
+        add(Level.INFO, pattern, args);
+    }
+
+    /**
+     * Добавить во входную очередь сообщение в виде шаблона с параметрами(см. {@link #add(String, Object...)})
+     * @param level Уровень важности
+     * @param pattern Шаблон сообщения
+     * @param args Параметры
+     */
+    public void add(Level level, String pattern, Object... args) {
+        if (isEnabled(level) && inputQueueHandler.hasLoggingQueues()) {
+            offer(new ParameterizedLogData(level, pattern, args));
+        }
+    }
+
+    /**
+     * Добавить во входную очередь сообщение с тегом в виде шаблона с параметрами(см. {@link #add(String, Object...)}).
+     * По тегу маршруты видов логирования отбирают сообщения(см. {@link Routes#tag(String...)}).
+     * <br/><br/>
+     * Метод назван отдельно, а не перегружает add(): иначе вызов add(шаблон, уровень, параметр) попадал бы сюда.
+     * @param tag Тег сообщения
+     * @param level Уровень важности
+     * @param pattern Шаблон сообщения
+     * @param args Параметры
+     */
+    public void addTagged(String tag, Level level, String pattern, Object... args) {
+        if (isEnabled(level) && inputQueueHandler.hasLoggingQueues()) {
+            offer(new ParameterizedLogData(level, tag, pattern, args));
+        }
+    }
+
+    /**
+     * Добавить во входную очередь сообщение, текст которого формирует функция, с уровнем важности {@link Level#INFO}.
+     * <br/><br/>
+     * Функция вызывается потоком логирования, а не вызывающим потоком. Если ни один вид логирования не включен,
+     * то функция не вызывается.
+     * @param supplier Функция, формирующая текст сообщения
+     */
+    public void add(Supplier<String> supplier) {
+        add(Level.INFO, supplier);
+    }
+
+    /**
+     * Добавить во входную очередь сообщение, текст которого формирует функция(см. {@link #add(Supplier)})
+     * @param level Уровень важности
+     * @param supplier Функция, формирующая текст сообщения
+     */
+    public void add(Level level, Supplier<String> supplier) {
+        if (isEnabled(level) && inputQueueHandler.hasLoggingQueues()) {
+            offer(new SuppliedLogData(level, supplier));
+        }
+    }
+
+    /**
+     * Передать данные во входную очередь, отметив момент события и момент добавления для метрик задержки записи.
+     * Данные должны принадлежать логеру(см. {@link WrappedLogData})
+     */
+    private void offer(LogData data) {
+        data.epochMillis = System.currentTimeMillis();
+        data.enqueueNanos = System.nanoTime();
+        inputQueueHandler.offer(data);
+    }
+
+
+    /**
+     * Попадет ли сообщение заданного уровня хотя бы в один включенный вид логирования.
+     * <br/><br/>
+     * Проверка сводится к сравнению с заранее вычисленным минимальным порогом включенных видов логирования,
+     * поэтому ее можно выполнять перед формированием каждого отладочного сообщения.
+     * Все методы add() выполняют эту проверку сами, до создания каких-либо объектов.
+     * @param level Уровень важности
+     */
+    public boolean isEnabled(Level level) {
+        return level.ordinal() >= enabledLevel;
+    }
+
+
+    /**
+     * Установить порог уровня важности для вида логирования.
+     * Сообщения с уровнем ниже порога в данный вид логирования не попадают.
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @param level Порог. По умолчанию {@link Level#TRACE}, т.е. принимаются все сообщения
+     */
+    public void setLoggingLevel(LoggingType loggingType, Level level) {
+        setLoggingLevel(loggingType.name(), level);
+    }
+
+
+    /**
+     * Установить порог уровня важности вида логирования sinkName(см. {@link #setLoggingLevel(LoggingType, Level)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param level Порог. По умолчанию {@link Level#TRACE}, т.е. принимаются все сообщения
+     */
+    public void setLoggingLevel(String sinkName, Level level) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setThreshold(level);
+            updateEnabledLevel();
+        }
+    }
+
+
+    /**
+     * Установить маршрут вида логирования: условие, которому должно удовлетворять сообщение, чтобы попасть в данный вид логирования.
+     * <br/><br/>
+     * Условие проверяется распределителем входной очереди для каждого сообщения, прошедшего порог уровня важности,
+     * поэтому оно должно быть быстрым и не должно формировать текст сообщения. Готовые условия - в классе {@link Routes}.
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @param route Условие. null - принимаются все сообщения
+     */
+    public void setLoggingRoute(LoggingType loggingType, Predicate<LogData> route) {
+        setLoggingRoute(loggingType.name(), route);
+    }
+
+
+    /**
+     * Установить маршрут вида логирования sinkName: условие, которому должно удовлетворять сообщение(см. {@link #setLoggingRoute(LoggingType, Predicate)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param route Условие. null - принимаются все сообщения
+     */
+    public void setLoggingRoute(String sinkName, Predicate<LogData> route) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setRoute(route);
+        }
+    }
+
+
+    /**
+     * Управляющий объект вида логирования заданного класса
+     * @return Управляющий объект или null, если вид логирования с таким именем не создавался или имеет другой тип
+     */
+    private <T extends QueueHandler> T sinkOf(String sinkName, Class<T> handlerClass) {
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler == null) return null;
+        if (handlerClass.isInstance(queueHandler)) return handlerClass.cast(queueHandler);
+        System.out.println("BetaLogger: logging " + sinkName + " is not " + handlerClass.getSimpleName());
+        return null;
+    }
+
+
+    /** Пересчитать минимальный порог уровня важности по включенным видам логирования */
+    private void updateEnabledLevel() {
+        int level = Integer.MAX_VALUE;
+        for (QueueHandler queueHandler: loggingQueueHandlerMap.values()) {
+            if (queueHandler != null && queueHandler.isEnable()) {
+                level = Math.min(level, queueHandler.getThreshold().ordinal());
+            }
+        }
+        enabledLevel = level;
+    }
+
+
+    /**
+     * Включить формирование строки лога распределителем входной очереди, если включено больше одного вида логирования,
+     * который может ее использовать. Тогда строка форматируется и кодируется один раз для всех таких видов логирования
+     */
+    private void updateSharedEncoding() {
+        int count = 0;
+        for (QueueHandler queueHandler: loggingQueueHandlerMap.values()) {
+            if (queueHandler != null && queueHandler.isEnable() && queueHandler.usesEncodedLine()) count++;
+        }
+        inputQueueHandler.setEncodeLines(count > 1);
+    }
+
+
+    /**
+     * Получить переиспользуемые данные для логирования.
+     * <br/><br/>
+     * Данные заполняются методами append() и передаются в {@link #add(LogData)}. После записи во все виды логирования
+     * объект возвращается в пул логера, поэтому при логировании через этот метод новые объекты не создаются.
+     * Для кольцевого буфера({@link InputQueueType#RING_BUFFER}) объект возвращается в пул, когда его прочитали
+     * все виды логирования, когда-либо включенные в логере.
+     * @return Пустые данные для логирования
+     */
+    public MutableLogData newLogData() {
+        return logDataPool.acquire();
+    }
+
+
+    /**
+     * Установить период опроса логирующей очереди
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @param pollPeriod Период опроса очереди в милисекундах
+     */
+    public void setLoggingQueuePollPeriod(LoggingType loggingType, long pollPeriod) {
+        setLoggingQueuePollPeriod(loggingType.name(), pollPeriod);
+    }
+
+
+    /**
+     * Установить период опроса логирующей очереди вида логирования sinkName(см. {@link #setLoggingQueuePollPeriod(LoggingType, long)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param pollPeriod Период опроса очереди в милисекундах
+     */
+    public void setLoggingQueuePollPeriod(String sinkName, long pollPeriod) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setPollPeriod(pollPeriod);
+            queueHandler.setThreadRestartNeed(true);
+            updateState();
+        }
+    }
+
+
+    /**
+     * Установить период опроса входной очереди
+     * @param pollPeriod Период опроса в милисекундах
+     */
+    public void setInputQueuePollPeriod(long pollPeriod) {
+
+        inputQueueHandler.setPollPeriod(pollPeriod);
+        inputQueueHandler.setThreadRestartNeed(true);
+        updateState();
+
+    }
+
+
+    /**
+     * Установить стратегию работы потока, обслуживающего логирующую очередь.
+     * <br/><br/>
+     * Любая стратегия, кроме {@link IdleStrategy#SCHEDULED}, переводит поток в режим пробуждения по событию:
+     * сообщение уходит в лог сразу по поступлению в очередь, а не по истечении периода опроса.
+     * В стратегии {@link IdleStrategy#PARK} период опроса очереди ограничивает сверху таймаут парковки потока.
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @param idleStrategy Стратегия из перечисления {@link IdleStrategy}
+     */
+    public void setLoggingQueueIdleStrategy(LoggingType loggingType, IdleStrategy idleStrategy) {
+        setLoggingQueueIdleStrategy(loggingType.name(), idleStrategy);
+    }
+
+
+    /**
+     * Установить стратегию работы потока, обслуживающего логирующую очередь вида логирования sinkName(см. {@link #setLoggingQueueIdleStrategy(LoggingType, IdleStrategy)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param idleStrategy Стратегия из перечисления {@link IdleStrategy}
+     */
+    public void setLoggingQueueIdleStrategy(String sinkName, IdleStrategy idleStrategy) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setIdleStrategy(idleStrategy);
+            queueHandler.setThreadRestartNeed(true);
+            updateState();
+        }
+    }
+
+
+    /**
+     * Установить стратегию работы потока, обслуживающего входную очередь
+     * @param idleStrategy Стратегия из перечисления {@link IdleStrategy}
+     */
+    public void setInputQueueIdleStrategy(IdleStrategy idleStrategy) {
+
+        inputQueueHandler.setIdleStrategy(idleStrategy);
+        inputQueueHandler.setThreadRestartNeed(true);
+        updateState();
+
+    }
+
+
+    /**
+     * Установить способ выделения потока, обслуживающего логирующую очередь.
+     * <br/><br/>
+     * При большом количестве логеров в приложении режимы {@link ExecutionMode#SHARED_POOL} и {@link ExecutionMode#VIRTUAL}
+     * избавляют от собственного потока ОС на каждую очередь каждого логера.
+     * В общем пуле не рекомендуется использовать политику {@link BackpressurePolicy#BLOCK}: поток, ожидающий места в очереди,
+     * занимает поток пула, который мог бы эту очередь освободить.
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @param executionMode Способ из перечисления {@link ExecutionMode}
+     */
+    public void setLoggingQueueExecutionMode(LoggingType loggingType, ExecutionMode executionMode) {
+        setLoggingQueueExecutionMode(loggingType.name(), executionMode);
+    }
+
+
+    /**
+     * Установить способ выделения потока для логирующей очереди вида логирования sinkName(см. {@link #setLoggingQueueExecutionMode(LoggingType, ExecutionMode)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param executionMode Способ из перечисления {@link ExecutionMode}
+     */
+    public void setLoggingQueueExecutionMode(String sinkName, ExecutionMode executionMode) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setExecutionMode(executionMode);
+            queueHandler.setThreadRestartNeed(true);
+            updateState();
+        }
+    }
+
+
+    /**
+     * Установить способ выделения потока, обслуживающего входную очередь
+     * @param executionMode Способ из перечисления {@link ExecutionMode}
+     */
+    public void setInputQueueExecutionMode(ExecutionMode executionMode) {
+
+        inputQueueHandler.setExecutionMode(executionMode);
+        inputQueueHandler.setThreadRestartNeed(true);
+        updateState();
+
+    }
+
+
+    /**
+     * Установить размер пула потоков, общего для всех логеров приложения(см. {@link ExecutionMode#SHARED_POOL}).
+     * По умолчанию равен количеству процессоров, но не меньше двух.
+     * @param size Количество потоков
+     */
+    public static void setSharedPoolSize(int size) {
+        WorkerPools.setSharedPoolSize(size);
+    }
+
+
+    /**
+     * Ограничить емкость логирующей очереди.
+     * <br/><br/>
+     * Если очередь заполнена, то поведение определяется политикой. Политика {@link BackpressurePolicy#BLOCK} блокирует
+     * поток-распределитель входной очереди, а через него, по мере заполнения входной очереди, и производителей.
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @param capacity Емкость очереди. 0 - очередь неограниченной емкости
+     * @param backpressurePolicy Политика поведения при заполнении очереди из перечисления {@link BackpressurePolicy}
+     */
+    public void setLoggingQueueCapacity(LoggingType loggingType, int capacity, BackpressurePolicy backpressurePolicy) {
+        setLoggingQueueCapacity(loggingType.name(), capacity, backpressurePolicy);
+    }
+
+
+    /**
+     * Ограничить емкость логирующей очереди вида логирования sinkName(см. {@link #setLoggingQueueCapacity(LoggingType, int, BackpressurePolicy)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param capacity Емкость очереди. 0 - очередь неограниченной емкости
+     * @param backpressurePolicy Политика поведения при заполнении очереди из перечисления {@link BackpressurePolicy}
+     */
+    public void setLoggingQueueCapacity(String sinkName, int capacity, BackpressurePolicy backpressurePolicy) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setBackpressurePolicy(backpressurePolicy);
+            queueHandler.setCapacity(capacity);
+        }
+    }
+
+
+    /**
+     * Установить таймаут ожидания места в логирующей очереди для политики {@link BackpressurePolicy#BLOCK_TIMEOUT}
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @param blockTimeout Таймаут в милисекундах
+     */
+    public void setLoggingQueueBlockTimeout(LoggingType loggingType, long blockTimeout) {
+        setLoggingQueueBlockTimeout(loggingType.name(), blockTimeout);
+    }
+
+
+    /**
+     * Установить таймаут ожидания места в логирующей очереди вида логирования sinkName для политики {@link BackpressurePolicy#BLOCK_TIMEOUT}(см. {@link #setLoggingQueueBlockTimeout(LoggingType, long)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param blockTimeout Таймаут в милисекундах
+     */
+    public void setLoggingQueueBlockTimeout(String sinkName, long blockTimeout) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setBlockTimeout(blockTimeout);
+        }
+    }
+
+
+    /**
+     * Установить долю принимаемых сообщений для политики {@link BackpressurePolicy#SAMPLE}
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @param sampleRatio После заполнения очереди наполовину в нее попадает каждое sampleRatio-ое сообщение
+     */
+    public void setLoggingQueueSampleRatio(LoggingType loggingType, int sampleRatio) {
+        setLoggingQueueSampleRatio(loggingType.name(), sampleRatio);
+    }
+
+
+    /**
+     * Установить долю принимаемых сообщений логирующей очередью вида логирования sinkName для политики {@link BackpressurePolicy#SAMPLE}(см. {@link #setLoggingQueueSampleRatio(LoggingType, int)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @param sampleRatio После заполнения очереди наполовину в нее попадает каждое sampleRatio-ое сообщение
+     */
+    public void setLoggingQueueSampleRatio(String sinkName, int sampleRatio) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) {
+            queueHandler.setSampleRatio(sampleRatio);
+        }
+    }
+
+
+    /**
+     * Количество сообщений, отброшенных логирующей очередью
+     * (очередь заполнена или вид логирования отключен/находится в состоянии ошибки)
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     */
+    public long getLoggingQueueDroppedCount(LoggingType loggingType) {
+        return getLoggingQueueDroppedCount(loggingType.name());
+    }
+
+
+    /**
+     * Количество сообщений, отброшенных логирующей очередью вида логирования sinkName(см. {@link #getLoggingQueueDroppedCount(LoggingType)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     */
+    public long getLoggingQueueDroppedCount(String sinkName) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) return queueHandler.getDroppedCount();
+            else return 0;
+    }
+
+
+    /**
+     * Ограничить емкость входной очереди.
+     * <br/><br/>
+     * Для кольцевого буфера({@link InputQueueType#RING_BUFFER}) емкость задается в конструкторе логера и данным методом не меняется.
+     * Для собственных буферов производителей({@link InputQueueType#STRIPED}) емкость задает размер буферов потоков,
+     * впервые вызывающих add() после ее установки.
+     * @param capacity Емкость очереди. 0 - очередь неограниченной емкости
+     * @param backpressurePolicy Политика поведения при заполнении очереди из перечисления {@link BackpressurePolicy}
+     */
+    public void setInputQueueCapacity(int capacity, BackpressurePolicy backpressurePolicy) {
+
+        inputQueueHandler.setBackpressurePolicy(backpressurePolicy);
+        inputQueueHandler.setCapacity(capacity);
+
+    }
+
+
+    /**
+     * Установить таймаут ожидания места во входной очереди для политики {@link BackpressurePolicy#BLOCK_TIMEOUT}
+     * @param blockTimeout Таймаут в милисекундах
+     */
+    public void setInputQueueBlockTimeout(long blockTimeout) {
+        inputQueueHandler.setBlockTimeout(blockTimeout);
+    }
+
+
+    /**
+     * Установить долю принимаемых сообщений для политики {@link BackpressurePolicy#SAMPLE}
+     * @param sampleRatio После заполнения очереди наполовину в нее попадает каждое sampleRatio-ое сообщение
+     */
+    public void setInputQueueSampleRatio(int sampleRatio) {
+        inputQueueHandler.setSampleRatio(sampleRatio);
+    }
+
+
+    /** Количество сообщений, отброшенных входной очередью(очередь заполнена или логер остановлен) */
+    public long getInputQueueDroppedCount() {
+        return inputQueueHandler.getDroppedCount();
+    }
+
+
+    /**
+     * Ограничить частоту одинаковых сообщений.
+     * <br/><br/>
+     * Ограничение действует до распределения по видам логирования, поэтому лавина сообщений из одного места кода
+     * не доходит ни до одного вида логирования. Одинаковыми считаются сообщения с одним тегом, а сообщения без тега -
+     * с одним шаблоном(см. {@link #add(String, Object...)}) или текстом. На каждый ключ выделяется "ведро" из burst жетонов,
+     * пополняемое со скоростью messagesPerSecond. Когда сообщения с ключом снова начинают проходить, перед первым из них
+     * в лог выводится количество подавленных.
+     * @param messagesPerSecond Допустимая частота сообщений с одним ключом. 0 - частота не ограничивается
+     * @param burst Количество сообщений, которое проходит подряд без ограничения
+     */
+    public void setRateLimit(double messagesPerSecond, int burst) {
+        inputQueueHandler.suppressor.setRateLimit(messagesPerSecond, burst);
+    }
+
+
+    /**
+     * Схлопывать повторы: сообщение, совпадающее с предыдущим по тексту, уровню важности и тегу, в лог не выводится.
+     * Вместо серии повторов выводится "Last message repeated N times" - когда приходит другое сообщение, но не реже одного раза за окно.
+     * При входной очереди {@link InputQueueType#RING_BUFFER} сводка по истечении окна выводится только при поступлении следующего сообщения.
+     * @param windowMillis Окно схлопывания в милисекундах. 0 - повторы не схлопываются
+     */
+    public void setDuplicateSuppression(long windowMillis) {
+        inputQueueHandler.suppressor.setDuplicateWindow(windowMillis);
+    }
+
+
+    /** Количество сообщений, подавленных ограничением частоты и схлопыванием повторов */
+    public long getSuppressedCount() {
+        return inputQueueHandler.suppressor.getSuppressedCount();
+    }
+
+
+    /**
+     * Метрики логирующей очереди и записи в место назначения
+     * @param loggingType Тип логирования из перечисления {@link LoggingType}
+     * @return Снимок метрик. null - вид логирования ни разу не включался
+     */
+    public QueueMetricsSnapshot getLoggingQueueMetrics(LoggingType loggingType) {
+        return getLoggingQueueMetrics(loggingType.name());
+    }
+
+
+    /**
+     * Метрики логирующей очереди и записи в место назначения вида логирования sinkName(см. {@link #getLoggingQueueMetrics(LoggingType)})
+     * @param sinkName Имя вида логирования(см. {@link #setFileLogging(String, String)})
+     * @return Снимок метрик. null - вид логирования ни разу не включался
+     */
+    public QueueMetricsSnapshot getLoggingQueueMetrics(String sinkName) {
+
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(sinkName);
+        if (queueHandler != null) return queueHandler.getMetrics();
+            else return null;
+    }
+
+
+    /** Метрики входной очереди */
+    public QueueMetricsSnapshot getInputQueueMetrics() {
+        return inputQueueHandler.getMetrics();
+    }
+
+
+    /**
+     * Зарегистрировать логер в платформенном MBeanServer под именем dk.betalogger:type=BetaLogger,name=&lt;name&gt;
+     * (см. {@link BetaLoggerMXBean}). Прежняя регистрация логера снимается.
+     * @param name Имя логера, уникальное в пределах JVM
+     */
+    public void registerMBean(String name) {
+
+        unregisterMBean();
+        try {
+            ObjectName newObjectName = new ObjectName("dk.betalogger:type=BetaLogger,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), newObjectName);
+            objectName = newObjectName;
+        } catch (JMException e) {
+            System.out.println(e);
+        }
+    }
+
+
+    /** Снять регистрацию логера в платформенном MBeanServer */
+    public void unregisterMBean() {
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.out.println(e);
+            }
+            objectName = null;
+        }
+    }
+
+
+    /** Реализация интерфейса управления через JMX. Читает состояние логера в момент запроса атрибута */
+    private class MXBean implements BetaLoggerMXBean {
+
+        @Override
+        public boolean isStarted() {
+            return start;
+        }
+
+        @Override
+        public QueueMetricsSnapshot getInputQueueMetrics() {
+            return BetaLogger.this.getInputQueueMetrics();
+        }
+
+        @Override
+        public long getSuppressedCount() {
+            return BetaLogger.this.getSuppressedCount();
+        }
+
+        @Override
+        public Map<String, QueueMetricsSnapshot> getLoggingQueueMetrics() {
+            Map<String, QueueMetricsSnapshot> metrics = new LinkedHashMap<>();
+            for (Map.Entry<String, QueueHandler> entry: loggingQueueHandlerMap.entrySet()) {
+                if (entry.getValue().isEnable()) metrics.put(entry.getKey(), entry.getValue().getMetrics());
+            }
+            return metrics;
+        }
     }
 
 
@@ -298,7 +1488,7 @@ public class BetaLogger {
      * (неважно по какой причине - принудительное прерываение, нормальное завершение или сработка исключения) */
 /*
     public boolean isLoggingQueueHandlerThreadDone(LoggingType loggingType) {
-        QueueHandler queueHandler = loggingQueueHandlerList[loggingType.ordinal()];
+        QueueHandler queueHandler = loggingQueueHandlerMap.get(loggingType.name());
         if (queueHandler != null) return queueHandler.isThreadDone();
             else return true;
     }
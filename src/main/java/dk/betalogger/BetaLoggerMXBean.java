@@ -0,0 +1,24 @@
+package dk.betalogger;
+
+import java.util.Map;
+
+/**
+ * Интерфейс управления логером через JMX(см. {@link BetaLogger#registerMBean(String)}).
+ * <br/><br/>
+ * Публикует метрики входной очереди и всех включенных видов логирования. Метрики доступны в любой JMX-консоли
+ * (например, JConsole или VisualVM) как составные данные.
+ */
+public interface BetaLoggerMXBean {
+
+    /** Запущен ли логер */
+    boolean isStarted();
+
+    /** Метрики входной очереди */
+    QueueMetricsSnapshot getInputQueueMetrics();
+
+    /** Количество сообщений, подавленных ограничением частоты и схлопыванием повторов */
+    long getSuppressedCount();
+
+    /** Метрики логирующих очередей по видам логирования. Ключ - имя вида логирования из перечисления {@link LoggingType} */
+    Map<String, QueueMetricsSnapshot> getLoggingQueueMetrics();
+}
@@ -0,0 +1,172 @@
+package dk.betalogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Перевод файла лога в двоичном формате({@link FileFormat#BINARY}) в текстовый формат.
+ * <br/><br/>
+ * Результат совпадает с тем, что было бы записано в файл в текстовом формате. Файл читается потоково,
+ * поэтому размер файла не ограничен. Несколько файлов, записанных подряд в один поток(например, cat), также читаются.
+ * <br/><br/>
+ * Запуск из командной строки:
+ * <pre>
+ * java -cp BetaLogger.jar dk.betalogger.BinaryLogDecoder файл_лога [файл_результата]
+ * </pre>
+ * Файл с расширением .gz(снятый с ротации) распаковывается на лету. Вместо имени файла лога можно указать "-"
+ * для чтения стандартного ввода. Если файл результата не указан, текст выводится в стандартный вывод.
+ */
+public class BinaryLogDecoder {
+
+    /** Формат штампа времени, совпадающий с текстовым форматом файла лога */
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss.SSS");
+
+    private final InputStream in;
+
+    /** Словарь шаблонов текущего блока */
+    private final Map<Long, String> templates = new HashMap<>();
+
+    /** Время предыдущего сообщения блока */
+    private long lastNanos;
+
+    private byte[] textBytes = new byte[256];
+    private final StringBuilder line = new StringBuilder(256);
+
+    private BinaryLogDecoder(InputStream in) {
+        this.in = in;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java dk.betalogger.BinaryLogDecoder <log file | -> [<output file>]");
+            System.exit(2);
+        }
+
+        InputStream in = "-".equals(args[0]) ? System.in : Files.newInputStream(Paths.get(args[0]));
+        if (args[0].endsWith(LogFileCompressor.GZIP_SUFFIX)) in = new GZIPInputStream(in, 64 * 1024);
+
+        try (InputStream input = in;
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     args.length > 1 ? Files.newOutputStream(Paths.get(args[1])) : System.out, StandardCharsets.UTF_8), 64 * 1024)) {
+            decode(input, out);
+        }
+    }
+
+    /**
+     * Перевести двоичный лог в текстовый формат
+     * @param in Поток с двоичным логом
+     * @param out Поток, в который пишутся строки лога
+     * @throws IOException При ошибке ввода-вывода или нарушении формата
+     */
+    public static void decode(InputStream in, Writer out) throws IOException {
+        new BinaryLogDecoder(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024)).run(out);
+    }
+
+    private void run(Writer out) throws IOException {
+        int type;
+        while ((type = in.read()) >= 0) {
+            switch (type) {
+                case 0:
+                    //  Хвост сегмента отображенного файла
+                    break;
+                case 'B':
+                    readMagic();
+                    break;
+                case BinaryLogFormat.RESET:
+                    templates.clear();
+                    lastNanos = readVarLong();
+                    break;
+                case BinaryLogFormat.DEFINE:
+                    long id = readVarLong();
+                    templates.put(id, readString());
+                    break;
+                case BinaryLogFormat.EVENT:
+                    readEvent();
+                    out.append(line);
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type);
+            }
+        }
+        out.flush();
+    }
+
+    /** Проверить сигнатуру файла. Первый байт уже прочитан */
+    private void readMagic() throws IOException {
+        for (int i = 1; i < BinaryLogFormat.MAGIC.length - 1; i++) {
+            if (readByte() != BinaryLogFormat.MAGIC[i]) throw new IOException("Not a BetaLogger binary log");
+        }
+        int version = readByte();
+        if (version != BinaryLogFormat.MAGIC[BinaryLogFormat.MAGIC.length - 1]) throw new IOException("Unsupported binary log version " + version);
+    }
+
+    /** Прочитать сообщение и сформировать строку лога в {@link #line} */
+    private void readEvent() throws IOException {
+        long zigzag = readVarLong();
+        long nanos = lastNanos + ((zigzag >>> 1) ^ -(zigzag & 1));
+        lastNanos = nanos;
+        readByte();         //  уровень важности в текстовом формате не выводится
+        long templateId = readVarLong();
+
+        line.setLength(0);
+        LocalDateTime time = LocalDateTime.ofInstant(
+                Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)), ZoneId.systemDefault());
+        TIME_FORMATTER.formatTo(time, line);
+        line.append("  ");
+
+        if (templateId == 0) {
+            line.append(readString());
+        } else {
+            String pattern = templates.get(templateId);
+            if (pattern == null) throw new IOException("Undefined template " + templateId);
+            int count = (int) readVarLong();
+            Object[] args = new Object[count];
+            for (int i = 0; i < count; i++) args[i] = readString();
+            ParameterizedLogData.format(pattern, args, line);
+        }
+        line.append('\n');
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("Unexpected end of binary log");
+        return b;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private String readString() throws IOException {
+        int length = (int) readVarLong();
+        if (textBytes.length < length) textBytes = new byte[Math.max(length, textBytes.length * 2)];
+        int offset = 0;
+        while (offset < length) {
+            int count = in.read(textBytes, offset, length - offset);
+            if (count < 0) throw new EOFException("Unexpected end of binary log");
+            offset += count;
+        }
+        return new String(textBytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
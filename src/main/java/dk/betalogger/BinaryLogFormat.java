@@ -0,0 +1,104 @@
+package dk.betalogger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Двоичный формат файла лога({@link FileFormat#BINARY}) и его кодировщик.
+ * <br/><br/>
+ * Файл начинается с сигнатуры "BLOG" и номера версии формата(1 байт), за которыми следуют записи.
+ * Первый байт записи - ее тип:<br/>
+ * {@link #RESET} - начало блока: varint время в наносекундах от 1970-01-01. Очищает словарь шаблонов;<br/>
+ * {@link #DEFINE} - шаблон: varint номер шаблона, строка шаблона;<br/>
+ * {@link #EVENT} - сообщение: zigzag varint разность времени с предыдущим сообщением блока(или с началом блока),
+ * уровень важности(1 байт), varint номер шаблона. Для номера 0 далее следует строка сообщения, иначе - varint количество
+ * параметров и строки параметров.<br/>
+ * Строка - varint длина в байтах и текст в кодировке UTF-8.
+ * <br/><br/>
+ * Каждый блок самодостаточен: он не ссылается на шаблоны и время предыдущих блоков. Блок пишется в файл целиком,
+ * поэтому ротация файла всегда приходится на границу блока. Нулевые байты между записями пропускаются
+ * (хвост сегмента при способе записи {@link FileAppenderType#MAPPED}, если приложение завершилось без закрытия файла).
+ */
+class BinaryLogFormat {
+
+    /** Сигнатура файла */
+    static final byte[] MAGIC = {'B', 'L', 'O', 'G', 1};
+
+    //  Типы записей
+    static final byte RESET = 1;
+    static final byte DEFINE = 2;
+    static final byte EVENT = 3;
+
+    /** Словарь шаблонов текущего блока */
+    private final Map<String, Integer> templates = new HashMap<>();
+
+    /** Время предыдущего сообщения блока */
+    private long lastNanos;
+
+    /** Начат ли блок */
+    private boolean blockStarted = false;
+
+    /** Переиспользуемые буферы текста */
+    private final StringBuilder text = new StringBuilder(256);
+    private final ByteBuilder textBytes = new ByteBuilder(256);
+
+    /** Закончить текущий блок. Следующее сообщение начнет новый блок */
+    void endBlock() {
+        blockStarted = false;
+    }
+
+    /**
+     * Закодировать сообщение. При необходимости перед сообщением дописываются начало блока и определение шаблона
+     * @param logData Сообщение
+     * @param epochNanos Время сообщения в наносекундах от 1970-01-01
+     * @param out Буфер, в который дописываются записи
+     */
+    void encode(LogData logData, long epochNanos, ByteBuilder out) {
+        if (blockStarted == false) {
+            templates.clear();
+            out.append(RESET).appendVarLong(epochNanos);
+            lastNanos = epochNanos;
+            blockStarted = true;
+        }
+
+        int templateId = 0;
+        Object[] args = null;
+        if (logData instanceof ParameterizedLogData && ((ParameterizedLogData) logData).getPattern() != null) {
+            String pattern = ((ParameterizedLogData) logData).getPattern();
+            Integer id = templates.get(pattern);
+            if (id == null) {
+                id = templates.size() + 1;
+                templates.put(pattern, id);
+                out.append(DEFINE).appendVarLong(id);
+                appendString(pattern, out);
+            }
+            templateId = id;
+            args = ((ParameterizedLogData) logData).getArgs();
+        }
+
+        long delta = epochNanos - lastNanos;
+        lastNanos = epochNanos;
+        out.append(EVENT).appendVarLong((delta << 1) ^ (delta >> 63));
+        out.append((byte) logData.getLevel().ordinal()).appendVarLong(templateId);
+
+        if (templateId == 0) {
+            text.setLength(0);
+            logData.appendTo(text);
+            appendString(text, out);
+        } else {
+            int count = args != null ? args.length : 0;
+            out.appendVarLong(count);
+            for (int i = 0; i < count; i++) {
+                text.setLength(0);
+                text.append(args[i]);
+                appendString(text, out);
+            }
+        }
+    }
+
+    /** Дописать строку: длина и текст в кодировке UTF-8 */
+    private void appendString(CharSequence s, ByteBuilder out) {
+        textBytes.reset().appendUtf8(s);
+        out.appendVarLong(textBytes.length()).append(textBytes.array(), 0, textBytes.length());
+    }
+}
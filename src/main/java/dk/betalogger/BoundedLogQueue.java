@@ -0,0 +1,134 @@
+package dk.betalogger;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Очередь ограниченной емкости с политикой поведения при заполнении.
+ * <br/><br/>
+ * Политика и ее параметры берутся из управляющего объекта, которому принадлежит очередь, в момент добавления сообщения,
+ * поэтому их изменение подхватывается на лету. Каждое отброшенное сообщение учитывается в управляющем объекте.
+ */
+class BoundedLogQueue extends AbstractQueue<LogData> {
+
+    /** Хранилище сообщений */
+    private final ArrayBlockingQueue<LogData> queue;
+
+    /** Емкость очереди */
+    private final int capacity;
+
+    /** Управляющий объект, которому принадлежит очередь */
+    private final QueueHandler owner;
+
+    /** Период проверки состояния управляющего объекта при ожидании места в очереди, в милисекундах */
+    private static final long BLOCK_CHECK_PERIOD = 10L;
+
+    /** Счетчик сообщений для политики {@link BackpressurePolicy#SAMPLE} */
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    /**
+     * Конструктор
+     * @param capacity Емкость очереди
+     * @param owner Управляющий объект, которому принадлежит очередь
+     */
+    BoundedLogQueue(int capacity, QueueHandler owner) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.owner = owner;
+    }
+
+    /**
+     * Добавить сообщение согласно политике управляющего объекта
+     * @return true(сообщение добавлено)/false(сообщение отброшено)
+     */
+    @Override
+    public boolean offer(LogData logData) {
+        boolean added;
+        switch (owner.getBackpressurePolicy()) {
+            case BLOCK:
+                //  Ожидание места ведется короткими отрезками, чтобы не зависнуть навсегда на очереди,
+                //  управляющий объект которой за время ожидания был отключен
+                try {
+                    do {
+                        added = queue.offer(logData, BLOCK_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+                    } while (!added && owner.isEnable() && owner.isAddToQueue());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    added = false;
+                }
+                break;
+            case BLOCK_TIMEOUT:
+                try {
+                    added = queue.offer(logData, owner.getBlockTimeout(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    added = false;
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(logData)) {
+                    LogData oldest = queue.poll();
+                    if (oldest != null) {
+                        owner.countDropped(1);
+                        oldest.release();
+                    }
+                }
+                added = true;
+                break;
+            case SAMPLE:
+                if (queue.size() >= capacity / 2
+                        && sampleCounter.getAndIncrement() % Math.max(owner.getSampleRatio(), 1) != 0) {
+                    added = false;
+                } else {
+                    added = queue.offer(logData);
+                }
+                break;
+            case DROP_NEWEST:
+            default:
+                added = queue.offer(logData);
+        }
+        if (!added) owner.countDropped(1);
+        return added;
+    }
+
+    /**
+     * Перенести сообщение из прежней очереди управляющего объекта. Никогда не блокирует поток.
+     * @return true(сообщение добавлено)/false(сообщение отброшено)
+     */
+    boolean transfer(LogData logData) {
+        boolean added = queue.offer(logData);
+        if (!added) {
+            owner.countDropped(1);
+            logData.release();
+        }
+        return added;
+    }
+
+    @Override
+    public LogData poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public LogData peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public Iterator<LogData> iterator() {
+        return queue.iterator();
+    }
+}
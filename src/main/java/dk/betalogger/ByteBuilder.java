@@ -0,0 +1,147 @@
+package dk.betalogger;
+
+/**
+ * Переиспользуемый растущий массив байтов.
+ * <br/><br/>
+ * Используется для формирования двоичных данных и строк в кодировке UTF-8 без создания промежуточных объектов.
+ * Объект не потокобезопасен.
+ */
+class ByteBuilder {
+
+    private byte[] data;
+    private int length;
+
+    ByteBuilder(int capacity) {
+        data = new byte[capacity];
+    }
+
+    /** Массив с данными. Действительны первые {@link #length()} байт */
+    byte[] array() {
+        return data;
+    }
+
+    /** Количество байт данных */
+    int length() {
+        return length;
+    }
+
+    /** Отбросить данные после первых length байт */
+    ByteBuilder setLength(int length) {
+        this.length = Math.min(length, this.length);
+        return this;
+    }
+
+    /** Очистить, сохранив выделенную память */
+    ByteBuilder reset() {
+        length = 0;
+        return this;
+    }
+
+    /** Обеспечить место еще под count байт */
+    private void ensure(int count) {
+        if (length + count > data.length) {
+            byte[] newData = new byte[Math.max(length + count, data.length * 2)];
+            System.arraycopy(data, 0, newData, 0, length);
+            data = newData;
+        }
+    }
+
+    ByteBuilder append(byte b) {
+        ensure(1);
+        data[length++] = b;
+        return this;
+    }
+
+    ByteBuilder append(byte[] bytes, int offset, int count) {
+        ensure(count);
+        System.arraycopy(bytes, offset, data, length, count);
+        length += count;
+        return this;
+    }
+
+    /** Дописать 16-битное целое в сетевом порядке байт */
+    ByteBuilder appendShort(int value) {
+        ensure(2);
+        data[length++] = (byte) (value >>> 8);
+        data[length++] = (byte) value;
+        return this;
+    }
+
+    /** Дописать 32-битное целое в сетевом порядке байт */
+    ByteBuilder appendInt(int value) {
+        ensure(4);
+        data[length++] = (byte) (value >>> 24);
+        data[length++] = (byte) (value >>> 16);
+        data[length++] = (byte) (value >>> 8);
+        data[length++] = (byte) value;
+        return this;
+    }
+
+    /** Дописать 64-битное целое в сетевом порядке байт */
+    ByteBuilder appendLong(long value) {
+        appendInt((int) (value >>> 32));
+        appendInt((int) value);
+        return this;
+    }
+
+    /** Дописать целое без знака в формате varint: по 7 бит в байте, начиная с младших, старший бит - признак продолжения */
+    ByteBuilder appendVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            append((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        return append((byte) value);
+    }
+
+    /** Записать 32-битное целое в сетевом порядке байт в уже сформированные данные */
+    void setInt(int position, int value) {
+        data[position] = (byte) (value >>> 24);
+        data[position + 1] = (byte) (value >>> 16);
+        data[position + 2] = (byte) (value >>> 8);
+        data[position + 3] = (byte) value;
+    }
+
+    /** Дописать символ в кодировке UTF-8. Символы суррогатных пар дописываются методом {@link #appendUtf8(CharSequence)} */
+    ByteBuilder appendUtf8(char c) {
+        if (c < 0x80) {
+            append((byte) c);
+        } else if (c < 0x800) {
+            ensure(2);
+            data[length++] = (byte) (0xC0 | (c >> 6));
+            data[length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            append((byte) '?');
+        } else {
+            ensure(3);
+            data[length++] = (byte) (0xE0 | (c >> 12));
+            data[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            data[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return this;
+    }
+
+    /** Дописать символ за пределами базовой плоскости Unicode(суррогатную пару) в кодировке UTF-8 */
+    ByteBuilder appendUtf8CodePoint(int codePoint) {
+        ensure(4);
+        data[length++] = (byte) (0xF0 | (codePoint >> 18));
+        data[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        data[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        data[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        return this;
+    }
+
+    /** Дописать строку в кодировке UTF-8. Непарные суррогатные символы заменяются на '?' */
+    ByteBuilder appendUtf8(CharSequence s) {
+        int count = s.length();
+        ensure(count);
+        for (int i = 0; i < count; i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(s.charAt(i + 1))) {
+                appendUtf8CodePoint(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                appendUtf8(c);
+            }
+        }
+        return this;
+    }
+}
@@ -0,0 +1,43 @@
+package dk.betalogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Запись в файл лога через постоянно открытый {@link FileChannel} в режиме дозаписи */
+class ChannelFileAppender implements FileAppender {
+
+    private final FileChannel channel;
+
+    /**
+     * Конструктор. Открывает файл, при отсутствии файл создается.
+     * @param path Путь к файлу лога
+     */
+    ChannelFileAppender(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
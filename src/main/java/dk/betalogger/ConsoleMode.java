@@ -0,0 +1,15 @@
+package dk.betalogger;
+
+/** Способы вывода в консоль */
+public enum ConsoleMode {
+    /**
+     * Вывод через System.out.println(): блокировка PrintStream и сброс на каждую строку.
+     * Учитывает подмену System.out(System.setOut())
+     */
+    PRINT_STREAM,
+    /**
+     * Порция сообщений собирается в буфер в кодировке UTF-8 и записывается в дескриптор стандартного вывода
+     * одной операцией записи. System.out и его блокировка не используются
+     */
+    BUFFERED
+}
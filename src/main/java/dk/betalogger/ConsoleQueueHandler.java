@@ -1,22 +1,126 @@
 package dk.betalogger;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import lombok.AccessLevel;
+import lombok.Setter;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
-/** Реализация управляющего объекта для консольного логирования */
+/**
+ * Реализация управляющего объекта для консольного логирования.
+ * <br/><br/>
+ * В режиме {@link ConsoleMode#BUFFERED} строки порции собираются в переиспользуемый буфер и записываются в дескриптор
+ * стандартного вывода одной операцией записи на порцию. Сообщения с уровнем важности не ниже {@link #stderrLevel}
+ * выводятся в стандартный поток ошибок. Порядок строк сохраняется: при смене потока вывода накопленные строки
+ * сначала записываются в прежний поток. Строка, сформированная распределителем({@link LogData#encodedLine}), копируется как есть.
+ */
 class ConsoleQueueHandler extends QueueHandler {
 
+
+    /** Максимальное количество сообщений, выбираемых из очереди за один раз */
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    /** Объем данных, при накоплении которого они записываются, не дожидаясь конца порции */
+    private static final int WRITE_CHUNK = 64 * 1024;
+
+    /** Разделитель строк в кодировке UTF-8 */
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /** Каналы дескрипторов стандартного вывода и потока ошибок, общие для всех логеров. Создаются при первом использовании */
+    private static final class Channels {
+        static final FileChannel OUT = new FileOutputStream(FileDescriptor.out).getChannel();
+        static final FileChannel ERR = new FileOutputStream(FileDescriptor.err).getChannel();
+    }
+
+    /** Способ вывода в консоль */
+    @Setter(AccessLevel.PACKAGE) private volatile ConsoleMode consoleMode = ConsoleMode.PRINT_STREAM;
+
+    /** Порог уровня важности для вывода в стандартный поток ошибок. null - все сообщения выводятся в стандартный вывод */
+    @Setter(AccessLevel.PACKAGE) private volatile Level stderrLevel;
+
+    /** Формирование строки лога */
+    private final LineEncoder lineEncoder = new LineEncoder();
+
+    /** Переиспользуемая строка лога. Доступна только потоку, обслуживающему очередь */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /** Переиспользуемый буфер вывода */
+    private final ByteBuilder data = new ByteBuilder(WRITE_CHUNK * 2);
+
+    /** Канал, в который будут записаны накопленные в буфере данные */
+    private FileChannel dataChannel;
+
     ConsoleQueueHandler() {
         queue = new ConcurrentLinkedQueue<LogData>();
-        threadCode = () -> {
-            //System.out.println("DEBUG  console handler thread begin");
-            LogData logData = queue.poll();
-            while (logData != null) {
-                System.out.println(LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss.SSS")) + "  " + logData.getStringForLogging());
-                logData = queue.poll();
+        threadCode = () -> drainQueue(this::writeBatch, MAX_BATCH_SIZE);
+    }
+
+    /** Вывести порцию сообщений в консоль */
+    private void writeBatch(List<LogData> batch) throws IOException {
+        if (consoleMode == ConsoleMode.BUFFERED) {
+            writeBuffered(batch);
+            return;
+        }
+        Level errorLevel = stderrLevel;
+        for (LogData logData: batch) {
+            formatLine(logData);
+            if (errorLevel != null && logData.getLevel().compareTo(errorLevel) >= 0) System.err.println(line);
+                else System.out.println(line);
+        }
+    }
+
+    /** Вывести порцию сообщений через буфер */
+    private void writeBuffered(List<LogData> batch) throws IOException {
+        Level errorLevel = stderrLevel;
+        data.reset();
+        try {
+            for (LogData logData: batch) {
+                FileChannel channel = errorLevel != null && logData.getLevel().compareTo(errorLevel) >= 0 ? Channels.ERR : Channels.OUT;
+                if (channel != dataChannel || data.length() >= WRITE_CHUNK) {
+                    writeData();
+                    dataChannel = channel;
+                }
+                byte[] encodedLine = logData.encodedLine;
+                int encodedLength = logData.encodedLength;
+                if (encodedLength >= 0) {
+                    data.append(encodedLine, 0, encodedLength);
+                } else {
+                    formatLine(logData);
+                    data.appendUtf8(line);
+                }
+                data.append(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
             }
-        };
+            writeData();
+        } finally {
+            data.reset();
+        }
+    }
+
+    /** Сформировать строку лога в {@link #line} */
+    private void formatLine(LogData logData) {
+        line.setLength(0);
+        lineEncoder.format(logData, line);
+    }
+
+    /** В режиме {@link ConsoleMode#BUFFERED} строка выводится в кодировке UTF-8 и может быть взята готовой */
+    @Override
+    boolean usesEncodedLine() {
+        return consoleMode == ConsoleMode.BUFFERED;
+    }
+
+    /** Записать накопленные данные в канал */
+    private void writeData() throws IOException {
+        if (data.length() > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(data.array(), 0, data.length());
+            while (buffer.hasRemaining()) dataChannel.write(buffer);
+            data.reset();
+        }
     }
 
 }
@@ -0,0 +1,9 @@
+package dk.betalogger;
+
+/** Формат данных, передаваемых в PostgreSQL командой COPY ... FROM STDIN */
+public enum CopyFormat {
+    /** Текстовый формат: строки с полями, разделенными табуляцией */
+    TEXT,
+    /** Двоичный формат PGCOPY. Сервер не разбирает текст, но столбец time должен иметь тип TIMESTAMP(без часового пояса) */
+    BINARY
+}
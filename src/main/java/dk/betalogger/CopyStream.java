@@ -0,0 +1,23 @@
+package dk.betalogger;
+
+import java.sql.SQLException;
+
+/**
+ * Поток данных одной команды COPY ... FROM STDIN.
+ * <br/><br/>
+ * Интерфейс отделяет логику формирования данных для COPY от драйвера PostgreSQL, что позволяет подставить вместо
+ * реального сервера локальную заглушку(см. {@link CopyStreamFactory}).
+ */
+interface CopyStream {
+    /** Передать очередную порцию данных */
+    void write(byte[] data, int offset, int length) throws SQLException;
+
+    /**
+     * Завершить передачу данных
+     * @return Количество строк, записанных сервером
+     */
+    long end() throws SQLException;
+
+    /** Прервать передачу данных. Сервер откатывает команду COPY */
+    void cancel() throws SQLException;
+}
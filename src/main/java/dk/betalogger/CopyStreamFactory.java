@@ -0,0 +1,14 @@
+package dk.betalogger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/** Фабрика потоков данных команды COPY ... FROM STDIN */
+interface CopyStreamFactory {
+    /**
+     * Начать выполнение команды COPY
+     * @param connection Соединение с БД
+     * @param sql Текст команды COPY ... FROM STDIN
+     */
+    CopyStream open(Connection connection, String sql) throws SQLException;
+}
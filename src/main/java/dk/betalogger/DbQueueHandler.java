@@ -12,4 +12,7 @@ abstract class DbQueueHandler extends QueueHandler {
 
     /** Имя таблицы, в которую будет осуществляться логирование */
     abstract DbQueueHandler setTable(String password);
+
+    /** Количество сообщений, записываемых в БД одним пакетом в одной транзакции */
+    abstract DbQueueHandler setBatchSize(int batchSize);
 }
@@ -0,0 +1,173 @@
+package dk.betalogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Спул - локальный файл, в который дописываются сообщения, пока место назначения логирования недоступно.
+ * <br/><br/>
+ * Формат записи: длина текста сообщения(int), момент события в милисекундах(long), текст в UTF-8.
+ * Записи читаются в порядке добавления. Прочитанные записи считаются обработанными только после вызова {@link #commit()},
+ * поэтому при ошибке записи в место назначения они будут прочитаны повторно. Когда все записи обработаны, файл обрезается.
+ * <br/><br/>
+ * Позиция чтения хранится только в памяти: если приложение завершилось до полной обработки спула, то при следующем запуске
+ * спул будет обработан с начала, т.е. часть сообщений может попасть в лог повторно.
+ * Объект используется только потоком управляющего объекта, которому принадлежит спул.
+ */
+class DiskSpool {
+
+    /** Размер заголовка записи: длина текста и момент времени */
+    private static final int HEADER_SIZE = 4 + 8;
+
+    private final Path path;
+
+    /** Предельный размер файла спула в байтах */
+    private final long maxSize;
+
+    private FileChannel channel;
+
+    /** Позиция первой необработанной записи */
+    private long readPosition = 0;
+
+    /** Позиция, до которой записи будут считаться обработанными после вызова {@link #commit()} */
+    private long pendingPosition = 0;
+
+    /** Переиспользуемый буфер записи */
+    private final ByteBuilder data = new ByteBuilder(64 * 1024);
+
+    /** Переиспользуемая строка для текста сообщения */
+    private final StringBuilder messageText = new StringBuilder(256);
+
+    /** Переиспользуемый буфер чтения */
+    private ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * Конструктор
+     * @param path Путь к файлу спула
+     * @param maxSize Предельный размер файла спула в байтах
+     */
+    DiskSpool(Path path, long maxSize) {
+        this.path = path;
+        this.maxSize = maxSize;
+    }
+
+    /** Открыть файл спула, если он еще не открыт. Записи, оставшиеся от предыдущего запуска, сохраняются */
+    private void open() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            readPosition = 0;
+            pendingPosition = 0;
+        }
+    }
+
+    /** Есть ли необработанные записи */
+    boolean isEmpty() throws IOException {
+        open();
+        return readPosition >= channel.size();
+    }
+
+    /**
+     * Дописать сообщения в спул
+     * @param batch Сообщения
+     * @return Количество сообщений, которые не поместились в спул из-за ограничения размера и были отброшены
+     */
+    int append(List<LogData> batch) throws IOException {
+        open();
+        long size = channel.size();
+        data.reset();
+        int written = 0;
+        for (LogData logData: batch) {
+            int start = data.length();
+            data.appendInt(0).appendLong(QueueHandler.epochMillisOf(logData));
+            messageText.setLength(0);
+            logData.appendTo(messageText);
+            data.appendUtf8(messageText);
+            if (size + data.length() > maxSize) {
+                data.setLength(start);
+                break;
+            }
+            data.setInt(start, data.length() - start - HEADER_SIZE);
+            written++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data.array(), 0, data.length());
+        long position = size;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return batch.size() - written;
+    }
+
+    /**
+     * Прочитать очередную порцию необработанных записей
+     * @param maxCount Максимальное количество записей
+     * @return Записи. Пустой список, если необработанных записей нет
+     */
+    List<LogData> read(int maxCount) throws IOException {
+        open();
+        List<LogData> records = new ArrayList<>();
+        long position = readPosition;
+        long size = channel.size();
+
+        while (records.size() < maxCount && position + HEADER_SIZE <= size) {
+            readBuffer.clear();
+            readBuffer.limit(HEADER_SIZE);
+            readFully(position);
+            int length = readBuffer.getInt(0);
+            long time = readBuffer.getLong(4);
+            if (position + HEADER_SIZE + length > size) break;        //  недописанная запись
+
+            if (readBuffer.capacity() < length) readBuffer = ByteBuffer.allocate(length);
+            readBuffer.clear();
+            readBuffer.limit(length);
+            readFully(position + HEADER_SIZE);
+            records.add(new SpooledLogData(time, new String(readBuffer.array(), 0, length, StandardCharsets.UTF_8)));
+
+            position += HEADER_SIZE + length;
+        }
+
+        pendingPosition = position;
+        return records;
+    }
+
+    /** Прочитать из файла содержимое буфера чтения до его заполнения */
+    private void readFully(long position) throws IOException {
+        while (readBuffer.hasRemaining()) {
+            if (channel.read(readBuffer, position + readBuffer.position()) < 0) throw new IOException("Unexpected end of spool file " + path);
+        }
+    }
+
+    /** Отметить записи, прочитанные последним вызовом {@link #read(int)}, как обработанные */
+    void commit() throws IOException {
+        readPosition = pendingPosition;
+        if (readPosition >= channel.size()) {
+            channel.truncate(0);
+            readPosition = 0;
+            pendingPosition = 0;
+        }
+    }
+
+    /** Размер файла спула в байтах */
+    long size() throws IOException {
+        open();
+        return channel.size();
+    }
+
+    /** Закрыть файл спула. Необработанные записи остаются в файле */
+    void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dk.betalogger;
+
+/**
+ * Способ выделения потоков для обслуживания очередей.
+ * <br/><br/>
+ * {@link #DEDICATED} - у каждого управляющего объекта свой поток. Поток завершается после минуты простоя остановленного объекта.<br/>
+ * {@link #SHARED_POOL} - управляющие объекты всех логеров приложения обслуживаются общим ограниченным пулом потоков.
+ * Объект занимает поток пула только на время обработки очереди, поэтому простаивающие места назначения потоков не держат.<br/>
+ * {@link #VIRTUAL} - каждый управляющий объект обслуживается виртуальным потоком(Java 21 и выше).
+ * Ожидающий виртуальный поток не занимает поток ОС.
+ */
+public enum ExecutionMode {
+    /** Собственный поток на каждый управляющий объект (поведение по умолчанию) */
+    DEDICATED,
+    /**
+     * Общий пул потоков для всех логеров. Размер пула задается {@link BetaLogger#setSharedPoolSize(int)}.
+     * Стратегии {@link IdleStrategy}, отличные от {@link IdleStrategy#SCHEDULED}, в этом режиме означают обработку очереди
+     * задачей пула, которая ставится в пул добавлением сообщения: поток пула не крутится в ожидании сообщений.
+     */
+    SHARED_POOL,
+    /** Виртуальный поток на каждый управляющий объект. Если виртуальные потоки недоступны, используется {@link #SHARED_POOL} */
+    VIRTUAL
+}
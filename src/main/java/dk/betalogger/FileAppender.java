@@ -0,0 +1,27 @@
+package dk.betalogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Интерфейс объекта, записывающего байты в открытый файл лога.
+ * <br/><br/>
+ * Объект создается на открытый файл и используется только потоком, обслуживающим файловую очередь.
+ */
+interface FileAppender extends AutoCloseable {
+    /**
+     * Дописать в конец файла содержимое буфера
+     * @param buffer Буфер. Записывается все от position до limit
+     */
+    void write(ByteBuffer buffer) throws IOException;
+
+    /** Сбросить записанные данные на диск(fsync) */
+    void sync() throws IOException;
+
+    /** Длина записанных в файл данных */
+    long size() throws IOException;
+
+    /** Закрыть файл */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,12 @@
+package dk.betalogger;
+
+/** Способы записи в файл лога */
+public enum FileAppenderType {
+    /** Запись через постоянно открытый FileChannel: одна операция записи на каждый сбрасываемый буфер */
+    CHANNEL,
+    /**
+     * Запись в отображенные в память сегменты файла фиксированного размера. Системный вызов записи не используется вовсе.
+     * При закрытии файл обрезается до реальной длины записанных данных.
+     */
+    MAPPED
+}
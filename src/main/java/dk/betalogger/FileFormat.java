@@ -0,0 +1,12 @@
+package dk.betalogger;
+
+/** Форматы файла лога */
+public enum FileFormat {
+    /** Текстовые строки "дд-ММ-гггг ЧЧ:мм:сс.ССС  сообщение" в кодировке UTF-8 (формат по умолчанию) */
+    TEXT,
+    /**
+     * Компактный двоичный формат: время в наносекундах разностями между записями, длины в формате varint, словарь шаблонов
+     * сообщений, переданных в {@link BetaLogger#add(String, Object...)}. Переводится в текстовый формат утилитой {@link BinaryLogDecoder}
+     */
+    BINARY
+}
@@ -4,4 +4,31 @@ package dk.betalogger;
 abstract class FileQueueHandler extends QueueHandler {
     /** Определение файла, куда будет идти логирование */
     abstract FileQueueHandler setFileName(String file);
+
+    /** Определение формата файла */
+    abstract FileQueueHandler setFileFormat(FileFormat fileFormat);
+
+    /** Определение способа записи в файл */
+    abstract FileQueueHandler setAppenderType(FileAppenderType appenderType);
+
+    /** Определение размера сегмента для способа записи {@link FileAppenderType#MAPPED} */
+    abstract FileQueueHandler setSegmentSize(long segmentSize);
+
+    /**
+     * Определение правил ротации файла
+     * @param maxFileSize Размер файла, при превышении которого производится ротация. 0 - ротация по размеру не производится
+     * @param rotationPeriod Период ротации по времени
+     * @param maxHistory Количество хранимых файлов, снятых с ротации. 0 - хранить все
+     */
+    abstract FileQueueHandler setRotation(long maxFileSize, RotationPeriod rotationPeriod, int maxHistory);
+
+    /**
+     * Определение политики сброса данных на диск
+     * @param syncPolicy Политика
+     * @param syncInterval Интервал сброса для политики {@link FileSyncPolicy#INTERVAL}, в милисекундах
+     */
+    abstract FileQueueHandler setSyncPolicy(FileSyncPolicy syncPolicy, long syncInterval);
+
+    /** Статистика длительности сброса данных на диск */
+    abstract SyncStatistics getSyncStatistics();
 }
@@ -0,0 +1,11 @@
+package dk.betalogger;
+
+/** Политика сброса данных файла лога на диск(fsync) */
+public enum FileSyncPolicy {
+    /** Явный сброс на диск не производится, момент записи на диск определяет ОС. Максимальная производительность */
+    NONE,
+    /** Сброс на диск после записи каждой выбранной из очереди порции сообщений(групповая фиксация) */
+    BATCH,
+    /** Сброс на диск не чаще заданного интервала времени, если с момента предыдущего сброса были записаны данные */
+    INTERVAL
+}
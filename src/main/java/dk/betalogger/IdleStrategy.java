@@ -0,0 +1,20 @@
+package dk.betalogger;
+
+/**
+ * Стратегия работы потока, обслуживающего очередь.
+ * <br/><br/>
+ * {@link #SCHEDULED} - классический режим: поток запускается планировщиком с периодом опроса очереди.<br/>
+ * Остальные стратегии включают режим пробуждения по событию: поток работает непрерывно, а добавление сообщения
+ * в очередь будит поток. Стратегии отличаются поведением потока в моменты, когда очередь пуста, т.е. определяют
+ * компромисс между загрузкой процессора и задержкой доставки сообщения.
+ */
+public enum IdleStrategy {
+    /** Опрос очереди планировщиком с заданным периодом (поведение по умолчанию) */
+    SCHEDULED,
+    /** Активное ожидание. Минимальная задержка, но поток полностью занимает ядро процессора */
+    BUSY_SPIN,
+    /** Ожидание с передачей процессора другим потокам через Thread.yield() */
+    YIELD,
+    /** Короткое активное ожидание, затем уступка процессора, затем парковка потока с нарастающим таймаутом. Поток будится добавлением в очередь */
+    PARK
+}
@@ -1,11 +1,31 @@
 package dk.betalogger;
 
+import lombok.AccessLevel;
+import lombok.Setter;
+
 /**
  * Абстрактный класс, на базе которого должны реализовываться любые
  * варианты логики для управления входной очередью.
  */
 abstract  class InputQueueHandler extends QueueHandler {
 
+    /** Подавление лавины сообщений(ограничение частоты и схлопывание повторов) перед распределением по логирующим очередям */
+    final LogSuppressor suppressor = new LogSuppressor();
+
+    /**
+     * Признак того, что распределитель должен формировать строку лога один раз для всех текстовых видов логирования
+     * ({@link LogData#encodedLine}). Устанавливается логером, когда таких видов логирования включено больше одного
+     */
+    @Setter(AccessLevel.PACKAGE) private volatile boolean encodeLines = false;
+
+    /** Формирование общей строки лога. Используется только потоком-распределителем */
+    private final LineEncoder lineEncoder = new LineEncoder();
+
+    /** Сформировать общую строку лога, если это требуется. Вызывается распределителем перед раскладкой сообщения по логирующим очередям */
+    void encodeLine(LogData logData) {
+        if (encodeLines && logData.encodedLength < 0) lineEncoder.encode(logData);
+    }
+
     /**
      * Регистрация логирующей очереди в управляющем объекте входной очереди
      * @param queue Объект, реализующий интерфейс {@link AddingToQueue}. Все управляющие объекты логирующих очередей реализуют данный интерфейс.
@@ -17,5 +37,11 @@ abstract  class InputQueueHandler extends QueueHandler {
      * @param queue Объект, реализующий интерфейс {@link AddingToQueue}. Все управляющие объекты логирующих очередей реализуют данный интерфейс.
      */
     abstract void unregisterLoggingQueue(AddingToQueue queue);
+
+    /**
+     * Зарегистрирована ли хотя бы одна логирующая очередь.
+     * Если нет, то сообщение никуда не попадет, и его можно не формировать.
+     */
+    abstract boolean hasLoggingQueues();
 }
 
@@ -0,0 +1,14 @@
+package dk.betalogger;
+
+/** Типы реализации входной очереди логера */
+public enum InputQueueType {
+    /** Неограниченная входная очередь, сообщения из которой поток-распределитель копирует в очереди каждого вида логирования */
+    QUEUE,
+    /** Кольцевой буфер, из которого потоки логирования читают сообщения напрямую, каждый по своему курсору */
+    RING_BUFFER,
+    /**
+     * Собственный буфер у каждого потока-производителя. Поток-распределитель сливает буферы в порядке моментов добавления.
+     * Добавление сообщения не создает конкуренции между потоками-производителями
+     */
+    STRIPED
+}
@@ -0,0 +1,60 @@
+package dk.betalogger;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек с интервалами по степеням двойки.
+ * <br/><br/>
+ * Интервал i содержит значения от 2^i до 2^(i+1)-1 наносекунд(интервал 0 - также значение 0). Запись значения -
+ * одно атомарное приращение, поэтому гистограмму можно вести на каждом сообщении. Процентили оцениваются сверху:
+ * возвращается верхняя граница интервала, т.е. оценка завышена не более чем вдвое.
+ */
+class LatencyHistogram {
+
+    /** Количество интервалов: по одному на каждый разряд long */
+    static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /** Номер интервала для значения */
+    static int bucketOf(long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /** Верхняя граница интервала */
+    static long upperBoundOf(int bucket) {
+        return bucket >= 62 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+    }
+
+    /** Учесть значение */
+    void record(long nanos) {
+        buckets.incrementAndGet(bucketOf(nanos));
+    }
+
+    /** Снимок количества значений по интервалам */
+    long[] snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) counts[i] = buckets.get(i);
+        return counts;
+    }
+
+    /**
+     * Оценка процентиля по снимку
+     * @param counts Снимок количества значений по интервалам
+     * @param percentile Процентиль, от 0 до 100
+     * @return Верхняя граница интервала, в который попадает процентиль. 0 - значений нет
+     */
+    static long percentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count: counts) total += count;
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(rank, 1)) return upperBoundOf(i);
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+}
@@ -0,0 +1,15 @@
+package dk.betalogger;
+
+/** Уровни важности сообщений в порядке возрастания */
+public enum Level {
+    /** Подробная трассировка */
+    TRACE,
+    /** Отладочные сообщения */
+    DEBUG,
+    /** Информационные сообщения (уровень по умолчанию) */
+    INFO,
+    /** Предупреждения */
+    WARN,
+    /** Ошибки */
+    ERROR
+}
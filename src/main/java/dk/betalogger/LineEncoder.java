@@ -0,0 +1,54 @@
+package dk.betalogger;
+
+/**
+ * Формирование текстовой строки лога: штамп времени, два пробела, текст сообщения.
+ * <br/><br/>
+ * Формат строки общий для текстовых видов логирования(консоль, текстовый файл). Поэтому, когда включено несколько
+ * таких видов логирования, строку можно сформировать и закодировать в UTF-8 один раз в распределителе входной очереди
+ * ({@link #encode(LogData)}), а виды логирования будут только копировать готовые байты(см. {@link LogData#encodedLine}).
+ * <br/><br/>
+ * Объект не потокобезопасен: у каждого владельца свой экземпляр.
+ */
+class LineEncoder {
+
+    /** Формат части штампа времени до секунд. Милисекунды дописываются через точку */
+    static final String TIME_PATTERN = "dd-MM-yyyy HH:mm:ss";
+
+    /** Вывод штампа времени в формате dd-MM-yyyy HH:mm:ss.SSS */
+    private final TimestampRenderer timestampRenderer = new TimestampRenderer(TIME_PATTERN);
+
+    /** Переиспользуемая строка лога */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /** Переиспользуемый буфер кодирования */
+    private final ByteBuilder data = new ByteBuilder(1024);
+
+    /**
+     * Дописать строку лога в строку. Разделитель строк не дописывается
+     * @param logData Данные для логирования
+     * @param builder Строка, в которую дописывается строка лога
+     */
+    void format(LogData logData, StringBuilder builder) {
+        timestampRenderer.render(QueueHandler.epochMillisOf(logData), builder);
+        builder.append("  ");
+        logData.appendTo(builder);
+    }
+
+    /**
+     * Сформировать строку лога в кодировке UTF-8 в {@link LogData#encodedLine}. Разделитель строк не дописывается.
+     * Непарные суррогатные символы заменяются на '?', как и при кодировании в видах логирования.
+     * <br/><br/>
+     * Массив данных переиспользуется, если его хватает под строку, поэтому для данных из пула логера
+     * в установившемся режиме новые массивы не создаются. После публикации строка не изменяется
+     * @param logData Данные для логирования
+     */
+    void encode(LogData logData) {
+        line.setLength(0);
+        format(logData, line);
+        data.reset().appendUtf8(line);
+        int length = data.length();
+        if (logData.encodedLine == null || logData.encodedLine.length < length) logData.encodedLine = new byte[length];
+        System.arraycopy(data.array(), 0, logData.encodedLine, 0, length);
+        logData.encodedLength = length;
+    }
+}
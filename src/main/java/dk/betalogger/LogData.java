@@ -1,9 +1,36 @@
 package dk.betalogger;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 /**
  * Абстрактный класс, на базе которого должны создаваться любые данные для логирования
+ * <br/><br/>
+ * Управляющие объекты логирующих очередей выводят данные методами appendTo(), дописывающими текст в переданный буфер.
+ * По умолчанию они используют {@link #getStringForLogging()}. Подкласс может переопределить их, чтобы выводить данные
+ * без создания промежуточной строки(см. {@link MutableLogData}).
  */
 public abstract class LogData {
+
+    /** Момент добавления в логер(System.nanoTime()). Используется для измерения задержки записи. 0 - не задан */
+    long enqueueNanos;
+
+    /**
+     * Момент события в милисекундах от 1970-01-01. Фиксируется один раз при добавлении в логер, поэтому все виды логирования
+     * выводят одинаковое время. 0 - не задан(см. {@link QueueHandler#epochMillisOf(LogData)})
+     */
+    long epochMillis;
+
+    /**
+     * Строка лога в кодировке UTF-8 без разделителя строк, сформированная распределителем входной очереди один раз
+     * для всех текстовых видов логирования(см. {@link LineEncoder}). Действительны первые {@link #encodedLength} байт.
+     * Массив переиспользуется вместе с объектом данных({@link MutableLogData})
+     */
+    byte[] encodedLine;
+
+    /** Длина строки лога в {@link #encodedLine}. -1 - строка не сформирована, вид логирования формирует строку сам */
+    int encodedLength = -1;
+
     /**
      * Сформировать строку для вывода в лог.
      * <br/><br/>
@@ -12,4 +39,65 @@ public abstract class LogData {
      * @return Строка для логирования
      */
     public abstract String getStringForLogging();
+
+    /**
+     * Уровень важности сообщения. Сообщение попадает только в те виды логирования, порог которых не выше этого уровня.
+     * @return Уровень важности. По умолчанию {@link Level#INFO}
+     */
+    public Level getLevel() {
+        return Level.INFO;
+    }
+
+    /**
+     * Тег сообщения: категория, по которой маршруты видов логирования отбирают сообщения(см. {@link Routes#tag(String...)}).
+     * @return Тег. По умолчанию null - сообщение без тега
+     */
+    public String getTag() {
+        return null;
+    }
+
+    /**
+     * Момент события: зафиксированный при добавлении в логер, а для данных, переданных в очередь в обход логера, - текущий момент
+     * @return Милисекунды от 1970-01-01
+     */
+    public final long getEpochMillis() {
+        return QueueHandler.epochMillisOf(this);
+    }
+
+    /**
+     * Дописать текст для вывода в лог в строку
+     * @param builder Строка, в которую дописывается текст
+     */
+    public void appendTo(StringBuilder builder) {
+        builder.append(getStringForLogging());
+    }
+
+    /**
+     * Дописать текст для вывода в лог в символьный буфер
+     * @param buffer Буфер, в который дописывается текст
+     * @throws java.nio.BufferOverflowException Если в буфере недостаточно места
+     */
+    public void appendTo(CharBuffer buffer) {
+        buffer.append(getStringForLogging());
+    }
+
+    /**
+     * Дописать текст для вывода в лог в байтовый буфер в кодировке UTF-8
+     * @param buffer Буфер, в который дописывается текст
+     * @throws java.nio.BufferOverflowException Если в буфере недостаточно места
+     */
+    public void appendTo(ByteBuffer buffer) {
+        Utf8.encode(getStringForLogging(), buffer);
+    }
+
+    /**
+     * Учесть count новых владельцев данных. Вызывается распределителем перед передачей данных в логирующие очереди.
+     * Имеет смысл только для данных, переиспользуемых через пул({@link MutableLogData})
+     */
+    void retain(int count) {
+    }
+
+    /** Освободить данные владельцем: после записи в лог или при отбрасывании. Последний владелец возвращает данные в пул */
+    void release() {
+    }
 }
@@ -0,0 +1,33 @@
+package dk.betalogger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Пул переиспользуемых данных для логирования {@link MutableLogData}.
+ * <br/><br/>
+ * Если пул пуст, создается новый объект. Если пул заполнен, возвращаемый объект достается сборщику мусора.
+ * Хранилище пула - массив, поэтому взятие и возврат объекта не создают новых объектов.
+ */
+class LogDataPool {
+
+    /** Размер пула по умолчанию */
+    static final int DEFAULT_SIZE = 4096;
+
+    private final ArrayBlockingQueue<MutableLogData> free;
+
+    LogDataPool(int size) {
+        free = new ArrayBlockingQueue<>(size);
+    }
+
+    /** Взять объект из пула */
+    MutableLogData acquire() {
+        MutableLogData logData = free.poll();
+        if (logData == null) logData = new MutableLogData(this);
+        return logData.reset();
+    }
+
+    /** Вернуть объект в пул. Вызывается последним владельцем объекта */
+    void recycle(MutableLogData logData) {
+        free.offer(logData);
+    }
+}
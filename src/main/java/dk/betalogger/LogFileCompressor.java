@@ -0,0 +1,94 @@
+package dk.betalogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сжатие файлов лога, снятых с ротации, и удаление устаревших файлов.
+ * <br/><br/>
+ * Вся работа выполняется одним фоновым потоком-демоном с минимальным приоритетом, общим для всех логеров,
+ * поэтому сжатие никогда не задерживает поток, обслуживающий файловую очередь.
+ */
+class LogFileCompressor {
+
+    /** Суффикс сжатого файла */
+    static final String GZIP_SUFFIX = ".gz";
+
+    /** Фоновый поток сжатия */
+    private static final ExecutorService executorService = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "BetaLogger-compressor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private LogFileCompressor() {
+    }
+
+    /**
+     * Поставить в очередь сжатие файла, снятого с ротации, с последующим удалением устаревших файлов
+     * @param rolledFile Файл, снятый с ротации
+     * @param logFile Текущий файл лога. Имена снятых с ротации файлов строятся от его имени
+     * @param maxHistory Количество хранимых файлов, снятых с ротации. 0 - хранить все
+     */
+    static void submit(Path rolledFile, Path logFile, int maxHistory) {
+        executorService.execute(() -> {
+            try {
+                compress(rolledFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                purge(logFile, maxHistory);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /** Сжать файл в gzip. Исходный файл после успешного сжатия удаляется */
+    private static void compress(Path file) throws IOException {
+        //  Файл мог быть уже удален как устаревший, пока ждал своей очереди на сжатие
+        if (Files.notExists(file)) return;
+
+        Path gzipFile = file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+        try (InputStream in = Files.newInputStream(file);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile), 64 * 1024)) {
+            in.transferTo(out);
+        }
+        Files.delete(file);
+    }
+
+    /** Удалить самые старые из снятых с ротации файлов сверх заданного количества */
+    private static void purge(Path logFile, int maxHistory) throws IOException {
+        if (maxHistory <= 0) return;
+
+        Path directory = logFile.toAbsolutePath().getParent();
+        Pattern pattern = Pattern.compile(Pattern.quote(logFile.getFileName().toString())
+                + "\\.\\d{8}-\\d{6}-\\d{3}(\\.\\d+)?(" + Pattern.quote(GZIP_SUFFIX) + ")?");
+
+        List<Path> rolledFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path: stream) {
+                if (pattern.matcher(path.getFileName().toString()).matches()) rolledFiles.add(path);
+            }
+        }
+
+        //  Имена содержат момент ротации, поэтому сортировка по имени - это сортировка по времени
+        Collections.sort(rolledFiles);
+        for (int i = 0; i < rolledFiles.size() - maxHistory; i++) {
+            Files.deleteIfExists(rolledFiles.get(i));
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package dk.betalogger;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Кольцевой буфер с множеством производителей и множеством потребителей.
+ * <br/><br/>
+ * Ячейки буфера выделяются один раз при создании, размер буфера всегда степень двойки.
+ * Производитель захватывает очередной порядковый номер и публикует сообщение в ячейку с индексом (номер & mask).
+ * Каждый потребитель читает буфер через свой курсор {@link Cursor}, который хранит номер следующего сообщения для чтения.
+ * <br/><br/>
+ * Производитель не может перезаписать ячейку, которую еще не прочитал хотя бы один сдерживающий(gating) курсор, и ждет его.
+ * Курсор, владелец которого в данный момент не принимает сообщения(см. {@link QueueHandler#isAddToQueue()}), производителей
+ * не сдерживает. Также не сдерживает производителей курсор, владельцу которого задана неблокирующая политика заполнения
+ * очереди(см. {@link QueueHandler#isBlockingBackpressure()}). Такой курсор может быть обогнан производителями;
+ * пропущенные им сообщения считаются потерянными и учитываются как отброшенные в управляющем объекте.
+ * <br/><br/>
+ * Каждый курсор считается владельцем каждого опубликованного после его создания сообщения(см. {@link LogData#retain(int)}):
+ * владелец курсора освобождает сообщение после записи, а сам курсор - сообщение, не прошедшее порог уровня важности.
+ * Поэтому данные из пула логера возвращаются в пул, когда их прочитали все курсоры. Сообщения, которые курсор выключенного
+ * вида логирования не прочитал, освобождаются им при повторной регистрации(см. {@link Cursor#skipToEnd()}). Сообщения,
+ * пропущенные обогнанным курсором или перезаписанные до повторной регистрации, в пул не возвращаются и достаются сборщику мусора.
+ */
+class LogRingBuffer {
+
+    /** Размер буфера по умолчанию */
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final int capacity;
+    private final int mask;
+
+    /** Ячейки буфера */
+    private final AtomicReferenceArray<LogData> entries;
+
+    /**
+     * Номер сообщения, опубликованного в каждой ячейке.<br/>
+     * На время записи в ячейку номер сбрасывается в -1, что позволяет читателю обнаружить перезапись ячейки во время чтения.
+     */
+    private final AtomicLongArray published;
+
+    /** Последний захваченный производителями номер */
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    /** Закэшированный минимальный номер, прочитанный сдерживающими курсорами */
+    private volatile long gatingCache = -1;
+
+    /** Курсоры потребителей */
+    private final List<Cursor> cursors = new CopyOnWriteArrayList<>();
+
+    /**
+     * Конструктор
+     * @param capacity Желаемый размер буфера. Округляется вверх до степени двойки
+     */
+    LogRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity && size < (1 << 30)) size <<= 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        entries = new AtomicReferenceArray<>(size);
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) published.set(i, -1);
+    }
+
+    /** Размер буфера */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Опубликовать сообщение в буфере.
+     * <br/><br/>
+     * Если буфер заполнен сообщениями, которые не прочитал хотя бы один сдерживающий курсор, то вызывающий поток ждет.
+     * Владельцами сообщения становятся все курсоры, существующие на момент публикации; владение вызывающей стороны сохраняется.
+     * @param logData Данные для логирования
+     */
+    void publish(LogData logData) {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - capacity;
+
+        if (wrapPoint > gatingCache) {
+            int idleCount = 0;
+            long minSequence;
+            while (wrapPoint > (minSequence = minGatingSequence(sequence))) {
+                if (idleCount < 100) Thread.onSpinWait();
+                    else if (idleCount < 200) Thread.yield();
+                        else LockSupport.parkNanos(1_000L);
+                idleCount++;
+            }
+            gatingCache = minSequence;
+        }
+
+        //  Курсоры считываются после захвата номера: курсор, созданный позже, начинает чтение со следующего номера
+        int readers = cursors.size();
+        if (readers > 0) logData.retain(readers);
+
+        int index = (int) sequence & mask;
+        published.set(index, -1);
+        entries.set(index, logData);
+        published.set(index, sequence);
+    }
+
+    /**
+     * Минимальный номер прочитанного сообщения среди сдерживающих курсоров
+     * @param sequence Номер публикуемого сообщения. Возвращается в случае отсутствия сдерживающих курсоров
+     */
+    private long minGatingSequence(long sequence) {
+        long min = sequence;
+        for (Cursor cursor: cursors) {
+            if (cursor.isGating()) min = Math.min(min, cursor.next - 1);
+        }
+        return min;
+    }
+
+    /**
+     * Создать курсор для нового потребителя.
+     * Курсор начинает чтение со следующего публикуемого сообщения.
+     * <br/><br/>
+     * Курсор включается в список до того, как определяется номер начала чтения. Поэтому производитель, который не увидел
+     * курсор в списке и не сделал его владельцем сообщения(см. {@link #publish(LogData)}), захватил номер раньше,
+     * и курсор это сообщение не прочитает.
+     * @param owner Управляющий объект логирующей очереди, который будет читать буфер через данный курсор
+     */
+    Cursor newCursor(QueueHandler owner) {
+        Cursor cursor = new Cursor(owner, Long.MAX_VALUE);
+        cursors.add(cursor);
+        cursor.next = claimed.get() + 1;
+        return cursor;
+    }
+
+    /** Список курсоров */
+    List<Cursor> getCursors() {
+        return cursors;
+    }
+
+
+    /**
+     * Курсор потребителя кольцевого буфера.
+     * <br/><br/>
+     * Курсор представлен в виде очереди, поэтому код, обслуживающий логирующую очередь, работает с ним точно так же,
+     * как и с собственной очередью: poll(), peek(), isEmpty(). Добавлять сообщения в курсор нельзя.
+     * Читать из курсора может только один поток.
+     */
+    class Cursor extends AbstractQueue<LogData> {
+
+        /** Управляющий объект, читающий буфер через данный курсор */
+        private final QueueHandler owner;
+
+        /** Номер следующего сообщения для чтения */
+        private volatile long next;
+
+        /** Признак регистрации курсора во входной очереди. Незарегистрированный курсор производителей не сдерживает */
+        private volatile boolean registered = true;
+
+        private Cursor(QueueHandler owner, long next) {
+            this.owner = owner;
+            this.next = next;
+        }
+
+        QueueHandler getOwner() {
+            return owner;
+        }
+
+        void setRegistered(boolean registered) {
+            this.registered = registered;
+        }
+
+        boolean isRegistered() {
+            return registered;
+        }
+
+        /** Сдерживает ли курсор производителей */
+        private boolean isGating() {
+            return registered && owner.isEnable() && owner.isAddToQueue() && owner.isBlockingBackpressure();
+        }
+
+        /**
+         * Прочитать сообщение с заданным номером.
+         * Если курсор был обогнан производителями, то он переводится на самое старое из доступных сообщений.
+         * @param advance Сдвигать ли курсор после чтения
+         * @return Сообщение или null, если сообщение еще не опубликовано
+         */
+        private LogData read(boolean advance) {
+            while (true) {
+                long sequence = next;
+                int index = (int) sequence & mask;
+                long before = published.get(index);
+                if (before < sequence) {
+                    //  Ячейка еще не опубликована или в нее прямо сейчас пишется следующее сообщение
+                    if (before == -1 && claimed.get() >= sequence + capacity) {
+                        skip(sequence);
+                        continue;
+                    }
+                    return null;
+                }
+                LogData logData = entries.get(index);
+                if (before > sequence || published.get(index) != sequence) {
+                    //  Курсор обогнали
+                    skip(sequence);
+                    continue;
+                }
+                if (advance) next = sequence + 1;
+                return logData;
+            }
+        }
+
+        /**
+         * Перевести курсор на следующее публикуемое сообщение. Пропущенные сообщения, которые еще находятся в буфере,
+         * освобождаются: курсор считался их владельцем(см. {@link #publish(LogData)}).
+         * Вызывается при повторной регистрации, когда поток владельца курсора остановлен.
+         */
+        void skipToEnd() {
+            long end = claimed.get() + 1;
+            for (long sequence = Math.max(next, end - capacity); sequence < end; sequence++) {
+                int index = (int) sequence & mask;
+                if (published.get(index) != sequence) continue;
+                LogData logData = entries.get(index);
+                //  Ячейку могли перезаписать во время чтения: тогда сообщение уже не принадлежит этому номеру
+                if (published.get(index) == sequence) logData.release();
+            }
+            next = end;
+        }
+
+        /** Перевести обогнанный курсор на самое старое из доступных сообщений */
+        private void skip(long sequence) {
+            long newNext = Math.max(sequence + 1, claimed.get() - capacity + 1);
+            owner.countDropped(newNext - sequence);
+            next = newNext;
+        }
+
+        /**
+         * Прочитать очередное сообщение. Сообщения, не прошедшие порог уровня важности владельца курсора, пропускаются
+         * и освобождаются курсором
+         */
+        @Override
+        public LogData poll() {
+            LogData logData;
+            while ((logData = read(true)) != null && owner.accepts(logData) == false) {
+                logData.release();
+            }
+            return logData;
+        }
+
+        @Override
+        public LogData peek() {
+            return read(false);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return published.get((int) next & mask) < next;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.max(0, Math.min(claimed.get() + 1 - next, capacity));
+        }
+
+        @Override
+        public boolean offer(LogData logData) {
+            throw new UnsupportedOperationException("Ring buffer cursor is read-only");
+        }
+
+        @Override
+        public Iterator<LogData> iterator() {
+            throw new UnsupportedOperationException("Ring buffer cursor is not iterable");
+        }
+    }
+}
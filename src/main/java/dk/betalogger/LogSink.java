@@ -0,0 +1,54 @@
+package dk.betalogger;
+
+import java.util.List;
+
+/**
+ * Подключаемое место назначения логирования.
+ * <br/><br/>
+ * Позволяет добавить вид логирования, не изменяя бета-логер. Логер создает для него собственную очередь и поток записи,
+ * выбирает сообщения из очереди порциями и передает их в {@link #onBatch(List)}. Размер порции подбирается по целевой
+ * задержке(см. {@link BetaLogger#setSinkBatching(String, int, long)}). Методы вызываются всегда одним потоком.
+ * <br/><br/>
+ * Если {@link #onBatch(List)} выбрасывает исключение, порция считается незаписанной и обрабатывается так же, как у встроенных
+ * видов логирования: теряется с блокировкой приема сообщений до успешной записи, либо, если включен спул, уходит в спул
+ * (см. {@link BetaLogger#setLoggingSpool(String, String, long)}).
+ * <br/><br/>
+ * Реализации, перечисленные в файле META-INF/services/dk.betalogger.LogSink, находятся через {@link java.util.ServiceLoader}
+ * по имени вида логирования({@link BetaLogger#setSinkLogging(String)}). Для этого у реализации должен быть публичный
+ * конструктор без параметров.
+ */
+public interface LogSink {
+
+    /**
+     * Имя вида логирования, под которым место назначения регистрируется в логере
+     * @return Имя. Используется во всех методах настройки логера вместо типа логирования
+     */
+    String getName();
+
+    /**
+     * Записать порцию сообщений.
+     * <br/><br/>
+     * Сообщения и список принадлежат логеру: после возврата из метода сообщения возвращаются в пул и переиспользуются,
+     * поэтому ссылки на них сохранять нельзя. Момент события - {@link LogData#getEpochMillis()}, текст - {@link LogData#appendTo(StringBuilder)}.
+     * @param batch Порция сообщений
+     * @throws Exception Порция не записана
+     */
+    void onBatch(List<LogData> batch) throws Exception;
+
+    /**
+     * Сбросить буферизованные данные в место назначения.
+     * Вызывается после порции, за которой очередь опустела, и перед {@link #close()}
+     * @throws Exception Данные не сброшены. Последняя порция считается незаписанной
+     */
+    default void flush() throws Exception {
+    }
+
+    /**
+     * Освободить ресурсы(соединения, файлы). Вызывается при останове потока записи: при останове логера или отключении вида
+     * логирования. Если вид логирования будет снова включен, то вызовы {@link #onBatch(List)} продолжатся, и реализация
+     * должна заново получить ресурсы.
+     * @throws Exception Ошибка освобождения ресурсов. Выводится и больше ни на что не влияет
+     */
+    default void close() throws Exception {
+    }
+}
@@ -0,0 +1,282 @@
+package dk.betalogger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Подавление лавины сообщений перед распределением по логирующим очередям.
+ * <br/><br/>
+ * Ограничение частоты: на каждый ключ сообщения заводится "ведро жетонов" емкостью burst, пополняемое со скоростью rate жетонов
+ * в секунду. Сообщение без жетона подавляется. Ключ - тег сообщения, если он задан, иначе шаблон(для сообщений с параметрами)
+ * или текст. Когда сообщения с ключом снова проходят, перед ними выводится сводка с количеством подавленных - не чаще раза в секунду
+ * на ключ, чтобы при непрекращающейся лавине сводки не удваивали количество сообщений.
+ * <br/><br/>
+ * Схлопывание повторов: сообщение, совпадающее с предыдущим по тексту, уровню важности и тегу, подавляется. Когда приходит
+ * другое сообщение или истекает окно схлопывания, выводится сводка "Last message repeated N times".
+ * <br/><br/>
+ * Объект не потокобезопасен: его использует только распределитель входной очереди(или добавляющая сторона под блокировкой,
+ * если распределителя нет).
+ */
+class LogSuppressor {
+
+    /** Предельное количество отслеживаемых ключей. При превышении забывается ключ, не встречавшийся дольше всех */
+    static final int MAX_KEYS = 4096;
+
+    /** Минимальный интервал между сводками ограничения частоты по одному ключу */
+    static final long SUMMARY_PERIOD_NANOS = 1_000_000_000L;
+
+    /** Скорость пополнения ведра, жетонов в секунду. 0 - частота не ограничивается */
+    private volatile double rate = 0;
+
+    /** Емкость ведра */
+    private volatile int burst = 1;
+
+    /** Окно схлопывания повторов в наносекундах. 0 - повторы не схлопываются */
+    private volatile long duplicateWindowNanos = 0;
+
+    /** Счетчик подавленных сообщений */
+    private final LongAdder suppressedCount = new LongAdder();
+
+    /** Ведра жетонов по ключам, в порядке последнего обращения */
+    private final Map<Object, Bucket> buckets = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Bucket> eldest) {
+            if (size() <= MAX_KEYS) return false;
+            //  Сводка по забытому ключу не выводится, но подавленные сообщения остаются в счетчике
+            if (eldest.getValue().suppressed > 0) pendingSummaries--;
+            return true;
+        }
+    };
+
+    //  Предыдущее сообщение для схлопывания повторов
+    private StringBuilder previousText = new StringBuilder(256);
+    private StringBuilder currentText = new StringBuilder(256);
+    private Level previousLevel;
+    private String previousTag;
+    private boolean hasPrevious = false;
+    /** Количество подавленных повторов предыдущего сообщения */
+    private long repeatCount = 0;
+    /** Момент первого подавленного повтора */
+    private long repeatStartNanos;
+
+    /** Количество ведер с подавленными сообщениями, о которых еще не выведена сводка */
+    private int pendingSummaries = 0;
+
+    /** Переиспользуемый ключ для поиска ведра по тексту сообщения(см. {@link #keyOf(LogData, boolean)}) */
+    private final TextKey textProbe = new TextKey();
+
+    /** Ведро жетонов одного ключа */
+    private static final class Bucket {
+        final Object key;
+        double tokens;
+        long updateNanos;
+        long suppressed;
+        long summaryNanos;
+        /** Уровень важности и тег последнего подавленного сообщения: с ними выводится сводка */
+        Level level;
+        String tag;
+
+        Bucket(Object key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Ключ ограничения частоты по тексту сообщения. Сравнивается по содержимому, поэтому ведро можно искать
+     * по переиспользуемому буферу текста, а копия текста создается только для нового ведра
+     */
+    private static final class TextKey {
+        private CharSequence text;
+        private int hash;
+
+        TextKey set(CharSequence text) {
+            this.text = text;
+            int h = 0;
+            for (int i = 0, length = text.length(); i < length; i++) h = 31 * h + text.charAt(i);
+            hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TextKey)) return false;
+            TextKey other = (TextKey) o;
+            return hash == other.hash && text.length() == other.text.length() && CharSequence.compare(text, other.text) == 0;
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    /**
+     * Ограничить частоту сообщений с одним ключом
+     * @param rate Жетонов в секунду. 0 - не ограничивать
+     * @param burst Емкость ведра: сколько сообщений подряд проходит без ограничения
+     */
+    void setRateLimit(double rate, int burst) {
+        this.burst = Math.max(burst, 1);
+        this.rate = Math.max(rate, 0);
+    }
+
+    /**
+     * Установить окно схлопывания повторов
+     * @param windowMillis Окно в милисекундах. 0 - не схлопывать
+     */
+    void setDuplicateWindow(long windowMillis) {
+        duplicateWindowNanos = Math.max(windowMillis, 0) * 1_000_000L;
+    }
+
+    /** Включено ли хотя бы одно подавление */
+    boolean isActive() {
+        return rate > 0 || duplicateWindowNanos > 0;
+    }
+
+    /** Количество подавленных сообщений */
+    long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    /**
+     * Пропустить сообщение через подавление.
+     * Прошедшее сообщение(и предшествующие ему сводки) передаются в out, подавленное освобождается.
+     * Повторы сравниваются с предыдущим прошедшим сообщением: сообщение, подавленное ограничением частоты, предыдущим не становится.
+     * @param logData Сообщение
+     * @param out Получатель прошедших сообщений
+     */
+    void offer(LogData logData, AddingToQueue out) {
+        long now = System.nanoTime();
+
+        boolean collapse = duplicateWindowNanos > 0;
+        if (collapse) {
+            currentText.setLength(0);
+            logData.appendTo(currentText);
+            if (hasPrevious && previousLevel == logData.getLevel() && equalsTag(previousTag, logData.getTag())
+                    && previousText.length() == currentText.length() && previousText.compareTo(currentText) == 0) {
+                if (repeatCount == 0) repeatStartNanos = now;
+                repeatCount++;
+                suppress(logData);
+                //  Длительная серия повторов выводит сводку по истечении каждого окна
+                if (now - repeatStartNanos >= duplicateWindowNanos) flushRepeats(out);
+                return;
+            }
+            flushRepeats(out);
+        } else if (hasPrevious) {
+            flushRepeats(out);
+            hasPrevious = false;
+        }
+
+        if (rate > 0) {
+            Object key = keyOf(logData, collapse);
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (key == textProbe) key = new TextKey().set(currentText.toString());
+                bucket = new Bucket(key);
+                bucket.tokens = burst;
+                bucket.updateNanos = now;
+                bucket.summaryNanos = now - SUMMARY_PERIOD_NANOS;
+                buckets.put(key, bucket);
+            } else {
+                bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.updateNanos) * rate / 1e9);
+                bucket.updateNanos = now;
+            }
+            if (bucket.tokens < 1) {
+                if (bucket.suppressed++ == 0) pendingSummaries++;
+                bucket.level = logData.getLevel();
+                bucket.tag = logData.getTag();
+                suppress(logData);
+                return;
+            }
+            bucket.tokens -= 1;
+            if (bucket.suppressed > 0 && now - bucket.summaryNanos >= SUMMARY_PERIOD_NANOS) {
+                flushSuppressed(bucket, now, out);
+            }
+        }
+
+        if (collapse) {
+            StringBuilder swap = previousText;
+            previousText = currentText;
+            currentText = swap;
+            previousLevel = logData.getLevel();
+            previousTag = logData.getTag();
+            hasPrevious = true;
+        }
+
+        out.offer(logData);
+    }
+
+    /**
+     * Вывести сводки, срок которых наступил: повторы по истечении окна схлопывания, подавленные ограничением частоты -
+     * по истечении интервала между сводками. Вызывается распределителем после каждого прохода
+     */
+    void flushExpired(AddingToQueue out) {
+        long now = System.nanoTime();
+        if (repeatCount > 0 && now - repeatStartNanos >= duplicateWindowNanos) flushRepeats(out);
+        if (pendingSummaries > 0) {
+            for (Bucket bucket: buckets.values()) {
+                if (bucket.suppressed > 0 && now - bucket.summaryNanos >= SUMMARY_PERIOD_NANOS) {
+                    flushSuppressed(bucket, now, out);
+                }
+            }
+        }
+    }
+
+    /** Вывести сводку подавленных ограничением частоты сообщений одного ключа */
+    private void flushSuppressed(Bucket bucket, long now, AddingToQueue out) {
+        out.offer(summary(bucket.level, bucket.tag).append("Rate limit: ").append(bucket.suppressed).append(" messages suppressed: ").append(bucket.key.toString()));
+        bucket.summaryNanos = now;
+        bucket.suppressed = 0;
+        pendingSummaries--;
+    }
+
+    /** Вывести сводку подавленных повторов предыдущего сообщения */
+    private void flushRepeats(AddingToQueue out) {
+        if (repeatCount > 0) {
+            out.offer(summary(previousLevel, previousTag).append("Last message repeated ").append(repeatCount).append(" times"));
+            repeatCount = 0;
+        }
+    }
+
+    private void suppress(LogData logData) {
+        suppressedCount.increment();
+        logData.release();
+    }
+
+    /** Сводка подавленных сообщений. Уровень и тег - как у подавленных сообщений, чтобы сводка прошла те же маршруты */
+    private static MutableLogData summary(Level level, String tag) {
+        MutableLogData summary = new MutableLogData(null).reset().setLevel(level).setTag(tag);
+        summary.epochMillis = System.currentTimeMillis();
+        return summary;
+    }
+
+    /**
+     * Ключ ограничения частоты. Ключ по тексту сообщения - переиспользуемый {@link #textProbe} над буфером {@link #currentText}:
+     * при создании ведра он заменяется копией
+     * @param textReady Текст сообщения уже сформирован в {@link #currentText}(схлопыванием повторов)
+     */
+    private Object keyOf(LogData logData, boolean textReady) {
+        String tag = logData.getTag();
+        if (tag != null) return tag;
+        if (logData instanceof ParameterizedLogData) {
+            String pattern = ((ParameterizedLogData) logData).getPattern();
+            if (pattern != null) return pattern;
+        }
+        if (textReady == false) {
+            currentText.setLength(0);
+            logData.appendTo(currentText);
+        }
+        return textProbe.set(currentText);
+    }
+
+    private static boolean equalsTag(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -2,5 +2,5 @@ package dk.betalogger;
 
 /** Тип логирования */
 public enum LoggingType {
-    CONSOLE, FILE, DB
+    CONSOLE, FILE, DB, NETWORK
 }
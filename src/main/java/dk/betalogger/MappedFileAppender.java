@@ -0,0 +1,116 @@
+package dk.betalogger;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Запись в файл лога через отображенные в память сегменты фиксированного размера.
+ * <br/><br/>
+ * Файл заранее увеличивается на размер сегмента, сегмент отображается в память, и строки лога копируются прямо в него.
+ * Когда сегмент заполнен, отображается следующий сегмент, начинающийся с конца записанных данных.
+ * Таким образом запись в файл не требует ни одного системного вызова.
+ * <br/><br/>
+ * При закрытии файл обрезается до реальной длины записанных данных, т.е. остается обычным текстовым логом.
+ * Если приложение завершилось без закрытия файла, то в конце файла останутся нулевые байты неиспользованной части сегмента.
+ */
+class MappedFileAppender implements FileAppender {
+
+    /** Размер сегмента по умолчанию */
+    static final long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    /** Размер сегмента */
+    private final long segmentSize;
+
+    /** Текущий отображенный сегмент */
+    private MappedByteBuffer segment;
+
+    /** Смещение текущего сегмента в файле */
+    private long segmentStart;
+
+    /**
+     * Конструктор. Открывает файл, при отсутствии файл создается. Запись продолжается с конца существующего файла.
+     * @param path Путь к файлу лога
+     * @param segmentSize Размер сегмента в байтах
+     */
+    MappedFileAppender(Path path, long segmentSize) throws IOException {
+        this.segmentSize = segmentSize;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentStart = channel.size();
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (segment == null || !segment.hasRemaining()) nextSegment();
+
+            int count = Math.min(buffer.remaining(), segment.remaining());
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + count);
+            segment.put(buffer);
+            buffer.limit(limit);
+        }
+    }
+
+    /** Отобразить в память следующий сегмент */
+    private void nextSegment() throws IOException {
+        if (segment != null) {
+            segmentStart += segment.position();
+            unmap(segment);
+        }
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+    }
+
+    /** Сбросить на диск текущий сегмент, а также данные уже освобожденных сегментов, оставшиеся в кэше ОС */
+    @Override
+    public void sync() throws IOException {
+        if (segment != null) segment.force();
+        channel.force(false);
+    }
+
+    @Override
+    public long size() {
+        return segmentStart + (segment != null ? segment.position() : 0);
+    }
+
+    /** Закрыть файл, предварительно обрезав его до реальной длины записанных данных */
+    @Override
+    public void close() throws IOException {
+        try {
+            long size = size();
+            if (segment != null) {
+                unmap(segment);
+                segment = null;
+            }
+            channel.truncate(size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Освободить отображение сегмента, не дожидаясь сборщика мусора.
+     * <br/><br/>
+     * Без этого на некоторых ОС(например, Windows) невозможно обрезать файл, пока отображение живо.
+     * Стандартного API для этого нет, поэтому используется sun.misc.Unsafe.invokeCleaner(). Если он недоступен,
+     * то отображение будет освобождено сборщиком мусора.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (Exception e) {
+            //  Отображение освободит сборщик мусора
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package dk.betalogger;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Переиспользуемые данные для логирования.
+ * <br/><br/>
+ * Объект берется из пула логера({@link BetaLogger#newLogData()}), заполняется методами append() и передается в
+ * {@link BetaLogger#add(LogData)}. После того как все виды логирования записали или отбросили сообщение, объект
+ * возвращается в пул и используется для следующего сообщения. Таким образом в установившемся режиме на сообщение
+ * не создается ни одного объекта.
+ * <br/><br/>
+ * После передачи в логер объект нельзя изменять и повторно передавать в логер.
+ */
+public final class MutableLogData extends LogData {
+
+    /** Емкость текста и строки лога, больше которой их буферы не сохраняются при возврате в пул */
+    private static final int MAX_RETAINED_CAPACITY = 4096;
+
+    private static final AtomicIntegerFieldUpdater<MutableLogData> REF_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(MutableLogData.class, "refCount");
+
+    /** Пул, в который возвращается объект. null - объект не переиспользуется */
+    private final LogDataPool pool;
+
+    /** Текст сообщения */
+    private StringBuilder message = new StringBuilder(128);
+
+    /** Уровень важности сообщения */
+    private Level level = Level.INFO;
+
+    /** Тег сообщения */
+    private String tag;
+
+    /** Количество владельцев объекта */
+    private volatile int refCount;
+
+    MutableLogData(LogDataPool pool) {
+        this.pool = pool;
+    }
+
+    /** Подготовить объект к заполнению. Единственный владелец - добавляющая сторона */
+    MutableLogData reset() {
+        if (message.capacity() > MAX_RETAINED_CAPACITY) message = new StringBuilder(128);
+            else message.setLength(0);
+        level = Level.INFO;
+        tag = null;
+        if (encodedLine != null && encodedLine.length > MAX_RETAINED_CAPACITY) encodedLine = null;
+        encodedLength = -1;
+        refCount = 1;
+        return this;
+    }
+
+    /** Установить уровень важности сообщения */
+    public MutableLogData setLevel(Level level) {
+        this.level = level;
+        return this;
+    }
+
+    @Override
+    public Level getLevel() {
+        return level;
+    }
+
+    /** Установить тег сообщения */
+    public MutableLogData setTag(String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    @Override
+    public String getTag() {
+        return tag;
+    }
+
+    public MutableLogData append(CharSequence s) {
+        message.append(s);
+        return this;
+    }
+
+    public MutableLogData append(char c) {
+        message.append(c);
+        return this;
+    }
+
+    public MutableLogData append(long value) {
+        message.append(value);
+        return this;
+    }
+
+    public MutableLogData append(double value) {
+        message.append(value);
+        return this;
+    }
+
+    /** Текст сообщения. Создает новую строку, поэтому управляющие объекты используют методы appendTo() */
+    @Override
+    public String getStringForLogging() {
+        return message.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        builder.append(message);
+    }
+
+    @Override
+    public void appendTo(CharBuffer buffer) {
+        buffer.append(message);
+    }
+
+    @Override
+    public void appendTo(ByteBuffer buffer) {
+        Utf8.encode(message, buffer);
+    }
+
+    @Override
+    void retain(int count) {
+        REF_COUNT.addAndGet(this, count);
+    }
+
+    @Override
+    void release() {
+        if (REF_COUNT.decrementAndGet(this) == 0 && pool != null) pool.recycle(this);
+    }
+}
@@ -1,13 +1,11 @@
 package dk.betalogger;
 
-import lombok.AccessLevel;
-import lombok.Setter;
-import lombok.experimental.Accessors;
-
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.time.LocalDateTime;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
@@ -19,77 +17,131 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * time TIMESTAMP(...)
  * message VARCHAR(...)
  * Точность дробной части секунд TIMESTAMP и длина VARCHAR выбирается по желанию.
+ * <br/><br/>
+ * Соединение с БД и подготовленный запрос INSERT создаются один раз и живут между запусками потока. Они пересоздаются
+ * только при смене параметров подключения или таблицы, а также после ошибки, и закрываются при останове потока.
+ * Сообщения из очереди записываются пакетами(addBatch/executeBatch) по batchSize штук, каждый пакет - одна транзакция.
+ * Чтобы драйвер MySQL отправлял пакет одним многострочным INSERT, в URL подключения стоит добавить параметр
+ * rewriteBatchedStatements=true.
  */
-@Accessors(chain = true)
 class MySQLDbQueueHandler extends DbQueueHandler {
 
+    /** Размер пакета по умолчанию */
+    static final int DEFAULT_BATCH_SIZE = 500;
+
     //  Параметры подключение к базе данных
-    @Setter(AccessLevel.PACKAGE) private String dbUrl;
-    @Setter(AccessLevel.PACKAGE) private String user;
-    @Setter(AccessLevel.PACKAGE) private String password;
+    private volatile String dbUrl;
+    private volatile String user;
+    private volatile String password;
     //  Таблица, куда будет осуществляться логирование
-    @Setter(AccessLevel.PACKAGE) private String table;
+    private volatile String table;
 
+    /** Количество сообщений в одном пакете */
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** Признак необходимости переподключиться к БД(сменились параметры подключения или таблица) */
+    private volatile boolean reconnectNeed = false;
+
+    /** Соединение с БД. Доступно только потоку, обслуживающему очередь */
+    private Connection connection;
+
+    /** Подготовленный запрос вставки сообщения */
+    private PreparedStatement statement;
 
-    /**
-     * Признак ошибки при взаимодействии с БД.
-     * Используется для реализации логики восстановления логирования после обнаружения ошибки в коммуникации с БД.
-     */
-    private boolean error = false;
 
     MySQLDbQueueHandler() {
 
         queue = new ConcurrentLinkedQueue<LogData>();
-        threadCode = () -> {
-            try {
+        //  Обработка ошибок взаимодействия с БД(блокировка очереди или спул) реализована в QueueHandler.drainQueue()
+        threadCode = () -> drainQueue(this::writeBatch, batchSize);
+        threadStopCode = () -> {
+            closeConnection();
+            closeSpool();
+        };
+    }
+
+
+    /**
+     * Записать порцию сообщений одним пакетом в одной транзакции.
+     * При ошибке соединение закрывается и будет установлено заново при следующей записи.
+     */
+    private void writeBatch(List<LogData> batch) throws Exception {
+        try {
+            openConnection();
+            for (LogData logData: batch) {
+                statement.setTimestamp(1, new Timestamp(epochMillisOf(logData)));
+                statement.setString(2, logData.getStringForLogging());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } catch (Exception e) {
+            closeConnection();
+            throw e;
+        }
+    }
 
-                if (queue.peek() != null) {
 
-                    Connection connection = DriverManager.getConnection(dbUrl, user, password);
-                    LogData logData;
+    @Override
+    MySQLDbQueueHandler setDbUrl(String dbUrl) {
+        this.dbUrl = dbUrl;
+        reconnectNeed = true;
+        return this;
+    }
 
-                    while ((logData = queue.poll()) != null) {
-                        connection.createStatement().executeUpdate(
-                                "INSERT INTO " + table +
-                                        " (time,message)" +
-                                        " VALUES " + "(" +
-                                        "'" + Timestamp.valueOf(LocalDateTime.now()) + "'" +
-                                        "," +
-                                        "'" + logData.getStringForLogging() + "'"
-                                        + ")"
-                        );
+    @Override
+    MySQLDbQueueHandler setUser(String user) {
+        this.user = user;
+        reconnectNeed = true;
+        return this;
+    }
 
-                    }
+    @Override
+    MySQLDbQueueHandler setPassword(String password) {
+        this.password = password;
+        reconnectNeed = true;
+        return this;
+    }
 
-                    connection.close();
+    @Override
+    MySQLDbQueueHandler setTable(String table) {
+        this.table = table;
+        reconnectNeed = true;
+        return this;
+    }
 
-                }
+    @Override
+    MySQLDbQueueHandler setBatchSize(int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+        return this;
+    }
 
-                if (error == true) {
-                    error = false;
-                    setAddToQueue(true);
-                }
 
-            } catch (/*SQLException*/ Exception e) {
+    /** Подключиться к БД и подготовить запрос, если соединения еще нет или требуется переподключение */
+    private void openConnection() throws SQLException {
+        if (reconnectNeed) {
+            reconnectNeed = false;
+            closeConnection();
+        }
+        if (connection == null) {
+            connection = DriverManager.getConnection(dbUrl, user, password);
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement("INSERT INTO " + table + " (time,message) VALUES (?,?)");
+        }
+    }
 
-                /*
-                    Код в блоке try требует обработки только одного проверяемого исключения - SQLException.
-                    Предполагается, что данный код будет выполняется по планировщику, который реалзизован в исполнителе.
-                    Но суть в том, что если еще какое-то исключение(например, непроверяемое) возникнет в этом коде и не будет перехвачено,
-                    то код на следующем запуске работать уже не будет. А если будет перехвачено, то будет. Поэтому, кодируем
-                    перехват абсолютно всех исключений.
-                 */
 
-                //e.printStackTrace();
+    /** Закрыть соединение с БД. Незафиксированный пакет теряется */
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
                 System.out.println(e);
-                if (error == false) {
-                    error = true;
-                    setAddToQueue(false);
-                }
-
             }
-
-        };
+            connection = null;
+            statement = null;
+        }
     }
 
 
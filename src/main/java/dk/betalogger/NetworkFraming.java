@@ -0,0 +1,12 @@
+package dk.betalogger;
+
+/** Формат сообщений, передаваемых по сети */
+public enum NetworkFraming {
+    /** Текстовые строки "дд-ММ-гггг ЧЧ:мм:сс.ССС  сообщение" в кодировке UTF-8, завершенные переводом строки (формат по умолчанию) */
+    LINES,
+    /**
+     * Сообщения syslog по RFC 5424 с временем в UTC. Важность syslog определяется уровнем важности сообщения, MSGID - тегом сообщения.
+     * По TCP сообщения разделяются префиксом длины(octet counting, RFC 6587)
+     */
+    SYSLOG
+}
@@ -0,0 +1,12 @@
+package dk.betalogger;
+
+/** Транспорт логирования по сети */
+public enum NetworkProtocol {
+    /** Поток TCP. Порция сообщений передается минимальным количеством операций записи */
+    TCP,
+    /**
+     * Датаграммы UDP. Строки сообщений упаковываются в датаграммы до предельного размера, сообщения syslog - по одному в датаграмме(RFC 5426).
+     * Не поместившееся в датаграмму сообщение обрезается
+     */
+    UDP
+}
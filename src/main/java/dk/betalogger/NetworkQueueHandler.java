@@ -0,0 +1,369 @@
+package dk.betalogger;
+
+import lombok.AccessLevel;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Реализация управляющего объекта для логирования по сети: в локальный агент сбора логов, на сервер syslog и т.п.
+ * <br/><br/>
+ * Используются неблокирующие каналы {@link SocketChannel} и {@link DatagramChannel}. Соединение и место в буфере сокета
+ * ожидаются селектором с таймаутом только в потоке, обслуживающем очередь, поэтому недоступность получателя
+ * не задерживает распределитель входной очереди: сообщения копятся в очереди вида логирования или уходят в спул.
+ * <br/><br/>
+ * Порция сообщений собирается в переиспользуемый буфер и передается по TCP одной операцией записи на каждые 64 КБ,
+ * а по UDP - датаграммами предельного размера. Соединение устанавливается при первой записи и живет между запусками потока.
+ * Если получатель закрыл соединение TCP, оно устанавливается заново перед записью порции. При ошибке соединение закрывается,
+ * порция считается незаписанной(см. {@link QueueHandler#drainQueue(BatchWriter, int)}), а соединение будет установлено
+ * при следующей записи. При останове потока соединение закрывается.
+ */
+class NetworkQueueHandler extends QueueHandler {
+
+    /** Максимальное количество сообщений, выбираемых из очереди за один раз */
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    /** Объем данных, при накоплении которого они передаются по TCP, не дожидаясь конца порции */
+    private static final int WRITE_CHUNK = 64 * 1024;
+
+    /** Размер датаграммы по умолчанию: наибольшая датаграмма UDP, не требующая фрагментации в сети Ethernet */
+    static final int DEFAULT_DATAGRAM_SIZE = 1472;
+
+    /** Наибольший размер датаграммы UDP */
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /** Время ожидания соединения или места в буфере сокета по умолчанию */
+    private static final long DEFAULT_IO_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /** Источник сообщений syslog по умолчанию: сообщения пользовательского уровня */
+    static final int DEFAULT_FACILITY = 1;
+
+    /** Метка порядка байт UTF-8, с которой по RFC 5424 начинается текст сообщения syslog в кодировке UTF-8 */
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /** Имя узла и идентификатор процесса для заголовка syslog. Вычисляются при первом использовании */
+    private static final class LocalHost {
+        static final String NAME = headerField(hostName(), 255);
+        static final String PROC_ID = String.valueOf(ProcessHandle.current().pid());
+
+        private static String hostName() {
+            try {
+                return InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+    }
+
+    //  Адрес получателя
+    private volatile NetworkProtocol protocol = NetworkProtocol.TCP;
+    private volatile String host;
+    private volatile int port;
+
+    /** Формат сообщений */
+    @Setter(AccessLevel.PACKAGE) private volatile NetworkFraming framing = NetworkFraming.LINES;
+
+    /** Предельный размер датаграммы UDP */
+    private volatile int datagramSize = DEFAULT_DATAGRAM_SIZE;
+
+    /** Источник сообщений syslog(facility) */
+    private volatile int facility = DEFAULT_FACILITY;
+
+    /** Имя приложения в заголовке syslog */
+    private volatile String appName = "-";
+
+    /** Признак необходимости переподключиться(сменился адрес получателя) */
+    private volatile boolean reconnectNeed = false;
+
+    /** Время ожидания соединения или места в буфере сокета, в наносекундах */
+    long ioTimeoutNanos = DEFAULT_IO_TIMEOUT_NANOS;
+
+    //  Канал и селектор. Доступны только потоку, обслуживающему очередь
+    private SelectableChannel channel;
+    private Selector selector;
+    private SelectionKey selectionKey;
+
+    /** Переиспользуемый буфер передачи */
+    private final ByteBuilder data = new ByteBuilder(WRITE_CHUNK * 2);
+
+    /** Переиспользуемый буфер одного сообщения */
+    private final ByteBuilder record = new ByteBuilder(1024);
+
+    /** Буфер для проверки, не закрыл ли получатель соединение TCP */
+    private final ByteBuffer probe = ByteBuffer.allocate(256);
+
+    /** Формирование строки лога */
+    private final LineEncoder lineEncoder = new LineEncoder();
+
+    /** Вывод штампа времени syslog(yyyy-MM-ddTHH:mm:ss.SSS в UTC) */
+    private final TimestampRenderer syslogTimestampRenderer = new TimestampRenderer("yyyy-MM-dd'T'HH:mm:ss", ZoneOffset.UTC);
+
+    /** Переиспользуемая строка для заголовка и текста сообщения */
+    private final StringBuilder text = new StringBuilder(256);
+
+    NetworkQueueHandler() {
+        queue = new ConcurrentLinkedQueue<LogData>();
+        //  Обработка ошибок передачи(блокировка очереди или спул) реализована в QueueHandler.drainQueue()
+        threadCode = () -> drainQueue(this::writeBatch, MAX_BATCH_SIZE);
+        threadStopCode = () -> {
+            closeChannel();
+            closeSelector();
+            closeSpool();
+        };
+    }
+
+
+    /** Передать порцию сообщений. При ошибке соединение закрывается и будет установлено заново при следующей записи */
+    private void writeBatch(List<LogData> batch) throws IOException {
+        try {
+            openChannel();
+            NetworkFraming currentFraming = framing;
+            boolean datagrams = channel instanceof DatagramChannel;
+            int maxDatagramSize = datagramSize;
+            data.reset();
+            for (LogData logData: batch) {
+                encodeRecord(logData, currentFraming);
+                if (datagrams) {
+                    if (record.length() > maxDatagramSize) truncateRecord(maxDatagramSize, currentFraming);
+                    //  Строки упаковываются в датаграмму, пока она не заполнится. Сообщение syslog - одно в датаграмме
+                    if (data.length() > 0 && (currentFraming == NetworkFraming.SYSLOG || data.length() + record.length() > maxDatagramSize)) send();
+                } else if (currentFraming == NetworkFraming.SYSLOG) {
+                    //  Префикс длины сообщения(octet counting)
+                    appendDecimal(record.length());
+                    data.append((byte) ' ');
+                }
+                data.append(record.array(), 0, record.length());
+                if (!datagrams && data.length() >= WRITE_CHUNK) send();
+            }
+            send();
+        } catch (IOException | RuntimeException e) {
+            closeChannel();
+            throw e;
+        }
+    }
+
+    /**
+     * Определение получателя. Соединение будет установлено заново
+     * @param protocol Транспорт
+     * @param host Имя или адрес узла
+     * @param port Порт
+     */
+    NetworkQueueHandler setAddress(NetworkProtocol protocol, String host, int port) {
+        this.protocol = protocol;
+        this.host = host;
+        this.port = port;
+        reconnectNeed = true;
+        return this;
+    }
+
+    /** Определение предельного размера датаграммы UDP */
+    NetworkQueueHandler setDatagramSize(int datagramSize) {
+        this.datagramSize = Math.min(Math.max(datagramSize, 64), MAX_DATAGRAM_SIZE);
+        return this;
+    }
+
+    /**
+     * Определение полей заголовка syslog
+     * @param facility Источник сообщений(0..23)
+     * @param appName Имя приложения. null - не задано
+     */
+    NetworkQueueHandler setSyslog(int facility, String appName) {
+        this.facility = Math.min(Math.max(facility, 0), 23);
+        this.appName = headerField(appName, 48);
+        return this;
+    }
+
+    /** В построчном формате строка лога может быть взята готовой */
+    @Override
+    boolean usesEncodedLine() {
+        return framing == NetworkFraming.LINES;
+    }
+
+
+    /** Сформировать сообщение в {@link #record} */
+    private void encodeRecord(LogData logData, NetworkFraming currentFraming) {
+        record.reset();
+        text.setLength(0);
+        if (currentFraming == NetworkFraming.SYSLOG) {
+            //  <PRI>VERSION TIMESTAMP HOSTNAME APP-NAME PROCID MSGID STRUCTURED-DATA MSG
+            text.append('<').append(facility * 8 + severityOf(logData.getLevel())).append(">1 ");
+            syslogTimestampRenderer.render(epochMillisOf(logData), text);
+            text.append("Z ").append(LocalHost.NAME)
+                    .append(' ').append(appName)
+                    .append(' ').append(LocalHost.PROC_ID)
+                    .append(' ').append(headerField(logData.getTag(), 32))
+                    .append(" - ");
+            record.appendUtf8(text).append(BOM, 0, BOM.length);
+            text.setLength(0);
+            logData.appendTo(text);
+            record.appendUtf8(text);
+        } else {
+            byte[] encodedLine = logData.encodedLine;
+            int encodedLength = logData.encodedLength;
+            if (encodedLength >= 0) {
+                record.append(encodedLine, 0, encodedLength);
+            } else {
+                lineEncoder.format(logData, text);
+                record.appendUtf8(text);
+            }
+            record.append((byte) '\n');
+        }
+    }
+
+    /** Обрезать сообщение до размера датаграммы по границе символа UTF-8. Строка сохраняет завершающий перевод строки */
+    private void truncateRecord(int maxLength, NetworkFraming currentFraming) {
+        boolean lines = currentFraming == NetworkFraming.LINES;
+        int length = lines ? maxLength - 1 : maxLength;
+        byte[] bytes = record.array();
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) length--;
+        record.setLength(length);
+        if (lines) record.append((byte) '\n');
+    }
+
+    /** Дописать в буфер передачи неотрицательное целое в десятичной записи */
+    private void appendDecimal(int value) {
+        int divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) data.append((byte) ('0' + value / divisor % 10));
+    }
+
+    /** Важность syslog по уровню важности сообщения */
+    private static int severityOf(Level level) {
+        switch (level) {
+            case ERROR: return 3;
+            case WARN: return 4;
+            case INFO: return 6;
+            default: return 7;
+        }
+    }
+
+    /**
+     * Значение поля заголовка syslog: только печатные символы ASCII, не длиннее заданного.
+     * Прочие символы заменяются на '_'. Пустое значение - "-"
+     */
+    private static String headerField(String value, int maxLength) {
+        if (value == null || value.isEmpty()) return "-";
+        StringBuilder field = new StringBuilder(Math.min(value.length(), maxLength));
+        for (int i = 0; i < value.length() && field.length() < maxLength; i++) {
+            char c = value.charAt(i);
+            field.append(c > 32 && c < 127 ? c : '_');
+        }
+        return field.toString();
+    }
+
+
+    /** Открыть канал, если он еще не открыт или требуется переподключение, и дождаться соединения */
+    private void openChannel() throws IOException {
+        if (reconnectNeed) {
+            reconnectNeed = false;
+            closeChannel();
+        }
+        if (channel instanceof SocketChannel && isClosedByPeer((SocketChannel) channel)) {
+            closeChannel();
+        }
+        if (channel == null) {
+            //  Адрес разрешается при каждом подключении, чтобы учесть смену адреса узла
+            InetSocketAddress address = new InetSocketAddress(host, port);
+            if (address.isUnresolved()) throw new UnknownHostException(host);
+            if (selector == null) selector = Selector.open();
+
+            if (protocol == NetworkProtocol.UDP) {
+                DatagramChannel datagramChannel = DatagramChannel.open();
+                channel = datagramChannel;
+                datagramChannel.configureBlocking(false);
+                datagramChannel.connect(address);
+            } else {
+                SocketChannel socketChannel = SocketChannel.open();
+                channel = socketChannel;
+                socketChannel.configureBlocking(false);
+                //  Данные и так передаются крупными блоками, а конец порции не должен ждать алгоритма Нейгла
+                socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                socketChannel.connect(address);
+            }
+            selectionKey = channel.register(selector, 0);
+        }
+        if (channel instanceof SocketChannel) {
+            SocketChannel socketChannel = (SocketChannel) channel;
+            long deadline = System.nanoTime() + ioTimeoutNanos;
+            while (socketChannel.finishConnect() == false) await(SelectionKey.OP_CONNECT, deadline);
+        }
+    }
+
+    /** Закрыл или сбросил ли получатель соединение TCP. Данные, присланные получателем, отбрасываются */
+    private boolean isClosedByPeer(SocketChannel socketChannel) {
+        if (socketChannel.isConnected() == false) return false;
+        int count;
+        try {
+            do {
+                probe.clear();
+                count = socketChannel.read(probe);
+            } while (count > 0);
+        } catch (IOException e) {
+            return true;
+        }
+        return count < 0;
+    }
+
+    /** Передать накопленные данные. Каждая операция записи по UDP отправляет одну датаграмму */
+    private void send() throws IOException {
+        if (data.length() > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(data.array(), 0, data.length());
+            long deadline = System.nanoTime() + ioTimeoutNanos;
+            while (buffer.hasRemaining()) {
+                if (((WritableByteChannel) channel).write(buffer) == 0) await(SelectionKey.OP_WRITE, deadline);
+            }
+            data.reset();
+        }
+    }
+
+    /** Дождаться готовности канала к операции */
+    private void await(int operation, long deadline) throws IOException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) throw new SocketTimeoutException("Network logging timeout: " + host + ":" + port);
+        selectionKey.interestOps(operation);
+        selector.select(Math.max(TimeUnit.NANOSECONDS.toMillis(remaining), 1));
+        selector.selectedKeys().clear();
+    }
+
+    /** Закрыть канал. Непереданные данные теряются */
+    private void closeChannel() {
+        data.reset();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+            channel = null;
+            selectionKey = null;
+        }
+    }
+
+    /** Закрыть селектор. Вызывается при останове потока */
+    private void closeSelector() {
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+            selector = null;
+        }
+    }
+}
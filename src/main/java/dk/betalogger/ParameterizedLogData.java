@@ -0,0 +1,98 @@
+package dk.betalogger;
+
+/**
+ * Данные для логирования в виде шаблона с параметрами.
+ * <br/><br/>
+ * Шаблон содержит места подстановки {}, которые по порядку заменяются значениями параметров(String.valueOf()).
+ * Лишние параметры игнорируются, места подстановки без параметров остаются в тексте как есть. Место подстановки
+ * экранируется обратной косой чертой: \{} выводится как {}.
+ * <br/><br/>
+ * Текст формируется не при добавлении в логер, а при первом обращении потока логирования к данным, и запоминается,
+ * поэтому при нескольких видах логирования формируется один раз.
+ */
+class ParameterizedLogData extends LogData {
+
+    private final Level level;
+
+    private final String tag;
+
+    private final String pattern;
+
+    private final Object[] args;
+
+    /** Сформированный текст. null - еще не сформирован */
+    private volatile String message;
+
+    ParameterizedLogData(Level level, String pattern, Object[] args) {
+        this(level, null, pattern, args);
+    }
+
+    ParameterizedLogData(Level level, String tag, String pattern, Object[] args) {
+        this.level = level;
+        this.tag = tag;
+        this.pattern = pattern;
+        this.args = args;
+    }
+
+    String getPattern() {
+        return pattern;
+    }
+
+    Object[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public Level getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public String getStringForLogging() {
+        String result = message;
+        if (result == null) {
+            //  Гонка потоков логирования безвредна: в худшем случае текст будет сформирован дважды
+            StringBuilder builder = new StringBuilder(pattern.length() + 16 * (args != null ? args.length : 0));
+            format(pattern, args, builder);
+            result = builder.toString();
+            message = result;
+        }
+        return result;
+    }
+
+    /**
+     * Подставить параметры в шаблон
+     * @param pattern Шаблон с местами подстановки {}
+     * @param args Параметры
+     * @param builder Строка, в которую дописывается результат
+     */
+    static void format(String pattern, Object[] args, StringBuilder builder) {
+        if (pattern == null) {
+            builder.append((String) null);
+            return;
+        }
+        int argIndex = 0;
+        int start = 0;
+        int length = pattern.length();
+        for (int i = 0; i < length - 1; i++) {
+            if (pattern.charAt(i) == '{' && pattern.charAt(i + 1) == '}') {
+                if (i > 0 && pattern.charAt(i - 1) == '\\') {
+                    //  Экранированное место подстановки: обратная косая черта не выводится
+                    builder.append(pattern, start, i - 1).append("{}");
+                } else if (args != null && argIndex < args.length) {
+                    builder.append(pattern, start, i).append(args[argIndex++]);
+                } else {
+                    builder.append(pattern, start, i + 2);
+                }
+                start = i + 2;
+                i++;
+            }
+        }
+        builder.append(pattern, start, length);
+    }
+}
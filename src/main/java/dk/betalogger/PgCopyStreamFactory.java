@@ -0,0 +1,36 @@
+package dk.betalogger;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Фабрика потоков COPY на базе CopyManager драйвера PostgreSQL.
+ * <br/><br/>
+ * Классы драйвера используются только в данном классе, поэтому без драйвера в classpath остальной код логера работает.
+ */
+class PgCopyStreamFactory implements CopyStreamFactory {
+
+    @Override
+    public CopyStream open(Connection connection, String sql) throws SQLException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+        return new CopyStream() {
+            @Override
+            public void write(byte[] data, int offset, int length) throws SQLException {
+                copyIn.writeToCopy(data, offset, length);
+            }
+
+            @Override
+            public long end() throws SQLException {
+                return copyIn.endCopy();
+            }
+
+            @Override
+            public void cancel() throws SQLException {
+                if (copyIn.isActive()) copyIn.cancelCopy();
+            }
+        };
+    }
+}
@@ -1,29 +1,254 @@
 package dk.betalogger;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+/**
+ * Класс, реализующий управляющий объект для логирования в таблицу БД PostgreSQL.
+ * <br/><br/>
+ * Для соединения с базой данных используется JDBC. В URL подключения к базе должно обязательно присутствовать имя базы. Пример: <br/>
+ * jdbc:postgresql://127.0.0.1:5432/logging
+ * Таблица в которую будут писаться сообщения, должна иметь следующие столбцы:
+ * time TIMESTAMP(...)
+ * message VARCHAR(...) или TEXT
+ * <br/><br/>
+ * Сообщения записываются не построчными INSERT, а потоком команды COPY ... FROM STDIN, по одной команде на каждые batchSize
+ * сообщений. Данные для COPY формируются в текстовом или двоичном формате({@link CopyFormat}).
+ * Соединение с БД живет между запусками потока и пересоздается только при смене параметров подключения или таблицы,
+ * а также после ошибки. При останове потока соединение закрывается.
+ * <br/><br/>
+ * Поток COPY создается фабрикой {@link #copyStreamFactory}. Ее можно заменить локальной заглушкой,
+ * чтобы проверить формируемые данные без сервера PostgreSQL.
+ */
 class PostgreDbQueueHandler extends DbQueueHandler {
 
+    /** Размер пакета по умолчанию */
+    static final int DEFAULT_BATCH_SIZE = 10000;
+
+    /** Объем данных, при накоплении которого они передаются в поток COPY, не дожидаясь конца пакета */
+    private static final int WRITE_CHUNK = 64 * 1024;
+
+    /** Заголовок двоичного формата COPY: сигнатура, флаги, длина расширения заголовка */
+    private static final byte[] BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    /** Начало отсчета времени в двоичном формате PostgreSQL(2000-01-01 00:00:00), в секундах от 1970-01-01 */
+    private static final long PG_EPOCH_SECONDS = 946_684_800L;
+
+    //  Параметры подключение к базе данных
+    private volatile String dbUrl;
+    private volatile String user;
+    private volatile String password;
+    //  Таблица, куда будет осуществляться логирование
+    private volatile String table;
+
+    /** Количество сообщений в одной команде COPY */
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** Формат данных COPY */
+    private volatile CopyFormat copyFormat = CopyFormat.TEXT;
+
+    /** Признак необходимости переподключиться к БД(сменились параметры подключения или таблица) */
+    private volatile boolean reconnectNeed = false;
+
+    /** Фабрика потоков COPY */
+    CopyStreamFactory copyStreamFactory = new PgCopyStreamFactory();
+
+    /** Соединение с БД. Доступно только потоку, обслуживающему очередь */
+    private Connection connection;
+
+    /** Текущий поток COPY */
+    private CopyStream copyStream;
+
+    /** Формат текущей команды COPY - двоичный */
+    private boolean binary;
+
+    /** Переиспользуемый буфер данных COPY */
+    private final ByteBuilder data = new ByteBuilder(WRITE_CHUNK * 2);
+
+    /** Вывод штампа времени в текстовом формате COPY(yyyy-MM-dd HH:mm:ss.SSS) */
+    private final TimestampRenderer timestampRenderer = new TimestampRenderer("yyyy-MM-dd HH:mm:ss");
+
+    /** Переиспользуемая строка для форматирования штампа времени */
+    private final StringBuilder timeText = new StringBuilder(32);
+
+    /** Переиспользуемая строка для текста сообщения */
+    private final StringBuilder messageText = new StringBuilder(256);
+
     PostgreDbQueueHandler() {
 
+        queue = new ConcurrentLinkedQueue<LogData>();
+        //  Обработка ошибок взаимодействия с БД(блокировка очереди или спул) реализована в QueueHandler.drainQueue()
+        threadCode = () -> drainQueue(this::writeBatch, batchSize);
+        threadStopCode = () -> {
+            closeConnection();
+            closeSpool();
+        };
+    }
+
+
+    /**
+     * Записать порцию сообщений одной командой COPY.
+     * При ошибке соединение закрывается и будет установлено заново при следующей записи.
+     */
+    private void writeBatch(List<LogData> batch) throws Exception {
+        try {
+            openConnection();
+            beginCopy();
+            for (LogData logData: batch) {
+                messageText.setLength(0);
+                logData.appendTo(messageText);
+                appendRow(epochMillisOf(logData), messageText);
+                if (data.length() >= WRITE_CHUNK) writeData();
+            }
+            endCopy();
+        } catch (Exception e) {
+            closeConnection();
+            throw e;
+        }
+    }
+
+    @Override
+    PostgreDbQueueHandler setDbUrl(String dbUrl) {
+        this.dbUrl = dbUrl;
+        reconnectNeed = true;
+        return this;
     }
 
     @Override
-    DbQueueHandler setDbUrl(String dbUrl) {
-        return null;
+    PostgreDbQueueHandler setUser(String user) {
+        this.user = user;
+        reconnectNeed = true;
+        return this;
     }
 
     @Override
-    DbQueueHandler setUser(String user) {
-        return null;
+    PostgreDbQueueHandler setPassword(String password) {
+        this.password = password;
+        reconnectNeed = true;
+        return this;
     }
 
     @Override
-    DbQueueHandler setPassword(String password) {
-        return null;
+    PostgreDbQueueHandler setTable(String table) {
+        this.table = table;
+        reconnectNeed = true;
+        return this;
     }
 
     @Override
-    DbQueueHandler setTable(String password) {
-        return null;
+    PostgreDbQueueHandler setBatchSize(int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+        return this;
+    }
+
+    /** Установить формат данных COPY. Применяется со следующей команды COPY */
+    PostgreDbQueueHandler setCopyFormat(CopyFormat copyFormat) {
+        this.copyFormat = copyFormat;
+        return this;
+    }
+
+
+    /** Подключиться к БД, если соединения еще нет или требуется переподключение */
+    private void openConnection() throws SQLException {
+        if (reconnectNeed) {
+            reconnectNeed = false;
+            closeConnection();
+        }
+        if (connection == null) {
+            connection = DriverManager.getConnection(dbUrl, user, password);
+        }
+    }
+
+
+    /** Закрыть соединение с БД. Незавершенная команда COPY прерывается, ее данные теряются */
+    private void closeConnection() {
+        data.reset();
+        if (copyStream != null) {
+            try {
+                copyStream.cancel();
+            } catch (SQLException e) {
+                System.out.println(e);
+            }
+            copyStream = null;
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println(e);
+            }
+            connection = null;
+        }
+    }
+
+
+    /** Начать команду COPY */
+    private void beginCopy() throws SQLException {
+        CopyFormat format = copyFormat;
+        data.reset();
+        if (format == CopyFormat.BINARY) {
+            copyStream = copyStreamFactory.open(connection, "COPY " + table + " (time,message) FROM STDIN WITH (FORMAT binary)");
+            data.append(BINARY_SIGNATURE, 0, BINARY_SIGNATURE.length).appendInt(0).appendInt(0);
+        } else {
+            copyStream = copyStreamFactory.open(connection, "COPY " + table + " (time,message) FROM STDIN");
+        }
+        binary = format == CopyFormat.BINARY;
+    }
+
+
+    /** Сформировать строку данных COPY */
+    private void appendRow(long epochMillis, CharSequence message) {
+        if (binary) {
+            //  Кортеж: количество полей, затем каждое поле - длина и значение.
+            //  TIMESTAMP без часового пояса хранит местное время в микросекундах от начала отсчета PostgreSQL
+            long localMillis = timestampRenderer.toLocalMillis(epochMillis);
+            data.appendShort(2);
+            data.appendInt(8).appendLong((localMillis - PG_EPOCH_SECONDS * 1000L) * 1000L);
+            int lengthPosition = data.length();
+            data.appendInt(0).appendUtf8(message);
+            data.setInt(lengthPosition, data.length() - lengthPosition - 4);
+        } else {
+            timeText.setLength(0);
+            timestampRenderer.render(epochMillis, timeText);
+            data.appendUtf8(timeText).append((byte) '\t');
+            for (int i = 0; i < message.length(); i++) {
+                char c = message.charAt(i);
+                switch (c) {
+                    case '\\': data.append((byte) '\\').append((byte) '\\'); break;
+                    case '\t': data.append((byte) '\\').append((byte) 't'); break;
+                    case '\n': data.append((byte) '\\').append((byte) 'n'); break;
+                    case '\r': data.append((byte) '\\').append((byte) 'r'); break;
+                    default:
+                        if (Character.isHighSurrogate(c) && i + 1 < message.length() && Character.isLowSurrogate(message.charAt(i + 1))) {
+                            data.appendUtf8CodePoint(Character.toCodePoint(c, message.charAt(++i)));
+                        } else {
+                            data.appendUtf8(c);
+                        }
+                }
+            }
+            data.append((byte) '\n');
+        }
+    }
+
+
+    /** Передать накопленные данные в поток COPY */
+    private void writeData() throws SQLException {
+        if (data.length() > 0) {
+            copyStream.write(data.array(), 0, data.length());
+            data.reset();
+        }
+    }
+
+
+    /** Завершить команду COPY */
+    private void endCopy() throws SQLException {
+        if (binary) data.appendShort(-1);
+        writeData();
+        CopyStream stream = copyStream;
+        copyStream = null;
+        stream.end();
     }
 }
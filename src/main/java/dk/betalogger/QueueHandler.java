@@ -4,6 +4,14 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Абстрактный класс, на базе которого строяться все управляющие объекты очередей в бета-логере.
  * <br/><br/>
@@ -49,9 +57,326 @@ abstract class QueueHandler extends QueueHandlerEngine implements AddingToQueue
     /** Признак необходимости перезагрузки управляющего потока  */
     @Getter @Setter private boolean threadRestartNeed = false;
 
+    /** Емкость очереди. 0 - очередь неограниченной емкости */
+    @Getter(AccessLevel.PACKAGE) private int capacity = 0;
+
+    /** Политика поведения очереди ограниченной емкости при ее заполнении */
+    @Getter(AccessLevel.PACKAGE) @Setter(AccessLevel.PACKAGE) private volatile BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+
+    /** Таймаут ожидания места в очереди для политики {@link BackpressurePolicy#BLOCK_TIMEOUT}, в милисекундах */
+    @Getter(AccessLevel.PACKAGE) @Setter(AccessLevel.PACKAGE) private volatile long blockTimeout = 100L;
+
+    /** Для политики {@link BackpressurePolicy#SAMPLE}: принимается каждое sampleRatio-ое сообщение */
+    @Getter(AccessLevel.PACKAGE) @Setter(AccessLevel.PACKAGE) private volatile int sampleRatio = 10;
+
+    /** Порог уровня важности: сообщения ниже порога в очередь не попадают */
+    @Getter(AccessLevel.PACKAGE) @Setter(AccessLevel.PACKAGE) private volatile Level threshold = Level.TRACE;
+
+    /** Маршрут: условие, которому должно удовлетворять сообщение, чтобы попасть в очередь. null - принимаются все сообщения */
+    @Getter(AccessLevel.PACKAGE) @Setter(AccessLevel.PACKAGE) private volatile Predicate<LogData> route;
+
+    /** Счетчик отброшенных сообщений */
+    private final LongAdder droppedCount = new LongAdder();
+
+    /** Метрики очереди и записи */
+    final QueueMetrics metrics = new QueueMetrics();
+
+    /** Спул на время недоступности места назначения логирования. null - спул не используется */
+    private volatile DiskSpool spool;
+
+    /** Спул, с которым работает поток управляющего объекта. Отличается от {@link #spool} до первого запуска потока после смены спула */
+    private DiskSpool activeSpool;
+
+    /** Начальная задержка повторной попытки записи после ошибки, в милисекундах */
+    @Setter(AccessLevel.PACKAGE) private volatile long retryDelayMin = 1000L;
+
+    /** Максимальная задержка повторной попытки записи после ошибки, в милисекундах */
+    @Setter(AccessLevel.PACKAGE) private volatile long retryDelayMax = 60_000L;
+
+    /** Текущая задержка повторной попытки записи */
+    private long retryDelay = 0;
+
+    /** Момент следующей попытки записи после ошибки, в милисекундах */
+    private long nextRetryTime = 0;
+
+    /**
+     * Признак ошибки записи в место назначения логирования.
+     * Используется для реализации логики восстановления логирования после обнаружения ошибки.
+     */
+    private boolean error = false;
+
+    /** Переиспользуемая порция сообщений, выбираемых из очереди. Доступна только потоку управляющего объекта */
+    private final List<LogData> batch = new ArrayList<>();
+
     /** Добавление нового сообщения в очередь */
     @Override
     public void offer(LogData logData) {
-        if (enable && addToQueue) queue.offer(logData);
+        if (enable && addToQueue) {
+            Queue<LogData> target = queue;
+            if (target.offer(logData)) {
+                metrics.enqueued.increment();
+                //  Очередь могли заменить(см. setCapacity()) после того, как сообщение в нее попало: тогда сообщения
+                //  переносит сама добавляющая сторона. Иначе замена произошла позже, и их перенесет setCapacity()
+                Queue<LogData> current;
+                while ((current = queue) != target) {
+                    moveMessages(target, current);
+                    target = current;
+                }
+                signal();
+            } else {
+                logData.release();
+            }
+        } else {
+            if (enable) metrics.droppedWhileBlocked.increment();
+            countDropped(1);
+            logData.release();
+        }
+    }
+
+    /** Проходит ли сообщение порог уровня важности и маршрут */
+    @Override
+    public boolean accepts(LogData logData) {
+        if (logData.getLevel().compareTo(threshold) < 0) return false;
+        Predicate<LogData> currentRoute = route;
+        return currentRoute == null || currentRoute.test(logData);
+    }
+
+    /**
+     * Установить емкость очереди.
+     * <br/><br/>
+     * Очередь пересоздается, сообщения из прежней очереди переносятся в новую(не поместившиеся в новую очередь отбрасываются).
+     * Сообщение, добавленное в прежнюю очередь уже после переноса, переносит добавляющая сторона(см. {@link #offer(LogData)}),
+     * поэтому емкость можно менять во время работы логера.
+     * Если вместо собственной очереди управляющий объект читает курсор кольцевого буфера, то запоминается только емкость:
+     * при этом политика, отличная от {@link BackpressurePolicy#BLOCK} и {@link BackpressurePolicy#BLOCK_TIMEOUT},
+     * разрешает производителям обгонять курсор, т.е. отбрасывать самые старые сообщения.
+     * @param capacity Емкость очереди. 0 - очередь неограниченной емкости
+     */
+    void setCapacity(int capacity) {
+        this.capacity = capacity;
+
+        Queue<LogData> oldQueue = queue;
+        if (oldQueue instanceof LogRingBuffer.Cursor) return;
+
+        Queue<LogData> newQueue = capacity > 0 ? new BoundedLogQueue(capacity, this) : new ConcurrentLinkedQueue<>();
+        queue = newQueue;
+        if (oldQueue != null) moveMessages(oldQueue, newQueue);
+    }
+
+    /**
+     * Перенести сообщения из прежней очереди в новую. Никогда не блокирует поток:
+     * сообщения, не поместившиеся в очередь ограниченной емкости, отбрасываются
+     */
+    private static void moveMessages(Queue<LogData> from, Queue<LogData> to) {
+        LogData logData;
+        if (to instanceof BoundedLogQueue) {
+            BoundedLogQueue boundedQueue = (BoundedLogQueue) to;
+            while ((logData = from.poll()) != null) boundedQueue.transfer(logData);
+        } else {
+            while ((logData = from.poll()) != null) to.offer(logData);
+        }
+    }
+
+    /** Может ли очередь ограниченной емкости блокировать добавляющую сторону */
+    boolean isBlockingBackpressure() {
+        return capacity == 0
+                || backpressurePolicy == BackpressurePolicy.BLOCK
+                || backpressurePolicy == BackpressurePolicy.BLOCK_TIMEOUT;
+    }
+
+    /** Учесть отброшенные сообщения */
+    void countDropped(long count) {
+        droppedCount.add(count);
+    }
+
+    /** Количество отброшенных сообщений */
+    long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Текущая глубина очереди.
+     * Для неограниченной очереди размер вычисляется перебором, поэтому метод предназначен только для снятия метрик
+     */
+    long getQueueDepth() {
+        Queue<LogData> currentQueue = queue;
+        return currentQueue != null ? currentQueue.size() : 0;
+    }
+
+    /**
+     * Выводит ли вид логирования строку лога в формате {@link LineEncoder} в кодировке UTF-8 и может ли использовать
+     * строку, сформированную распределителем({@link LogData#encodedLine})
+     */
+    boolean usesEncodedLine() {
+        return false;
+    }
+
+    /** Снимок метрик очереди и записи */
+    QueueMetricsSnapshot getMetrics() {
+        return metrics.snapshot(getQueueDepth(), getDroppedCount());
+    }
+
+
+    /**
+     * Включить спул на время недоступности места назначения логирования.
+     * <br/><br/>
+     * Без спула управляющий объект, обнаружив ошибку, блокирует прием сообщений в очередь(см. {@link #addToQueue}) до успешной записи.
+     * Со спулом прием сообщений не блокируется: пока место назначения недоступно, сообщения дописываются в спул, а попытки записи
+     * повторяются с нарастающей задержкой. После восстановления спул целиком переписывается в место назначения, и только затем
+     * обрабатывается очередь, т.е. порядок сообщений сохраняется.
+     * @param spoolFileName Имя файла спула. null - отключить спул
+     * @param maxSpoolSize Предельный размер файла спула в байтах. Не поместившиеся в спул сообщения отбрасываются
+     */
+    void setSpool(String spoolFileName, long maxSpoolSize) {
+        //  Прежний спул закрывает поток управляющего объекта(см. drainQueue())
+        spool = spoolFileName != null ? new DiskSpool(Paths.get(spoolFileName), maxSpoolSize) : null;
+    }
+
+    /** Закрыть файл спула. Вызывается при останове потока */
+    void closeSpool() {
+        if (activeSpool != null) {
+            activeSpool.close();
+            activeSpool = null;
+        }
+    }
+
+    /**
+     * Выбрать сообщения из очереди и передать их на запись порциями.
+     * <br/><br/>
+     * Реализует общую для всех мест назначения логику обработки ошибок записи: блокировку очереди или спул(см. {@link #setSpool(String, long)}).
+     * Вызывается из threadCode управляющих объектов логирующих очередей.
+     * @param writer Объект, записывающий порцию сообщений в место назначения
+     * @param maxBatchSize Максимальное количество сообщений в порции
+     */
+    void drainQueue(BatchWriter writer, int maxBatchSize) {
+        drainQueue(writer, maxBatchSize, null);
+    }
+
+    /**
+     * То же, что {@link #drainQueue(BatchWriter, int)}, с размером порции, подбираемым по длительности записи
+     * @param batchSize Подбор размера порции
+     */
+    void drainQueue(BatchWriter writer, AdaptiveBatchSize batchSize) {
+        drainQueue(writer, 0, batchSize);
+    }
+
+    private void drainQueue(BatchWriter writer, int fixedBatchSize, AdaptiveBatchSize batchSize) {
+        int maxBatchSize = batchSize != null ? batchSize.get() : fixedBatchSize;
+        DiskSpool currentSpool = spool;
+        if (activeSpool != currentSpool) {
+            closeSpool();
+            activeSpool = currentSpool;
+        }
+        try {
+
+            if (currentSpool != null && (error || !currentSpool.isEmpty())) {
+                if (error && System.currentTimeMillis() < nextRetryTime) {
+                    //  Место назначения недоступно: все выбранное из очереди уходит в спул
+                    spoolQueue(currentSpool, maxBatchSize);
+                    return;
+                }
+                //  Попытка восстановления: сначала переписываем спул, затем обрабатываем очередь
+                List<LogData> records;
+                while (!(records = currentSpool.read(maxBatchSize)).isEmpty()) {
+                    long start = System.nanoTime();
+                    writer.write(records);
+                    long end = System.nanoTime();
+                    metrics.recordBatch(records, start, end);
+                    currentSpool.commit();
+                    if (batchSize != null) {
+                        batchSize.update(records.size(), end - start);
+                        maxBatchSize = batchSize.get();
+                    }
+                }
+            }
+
+            while (pollBatch(maxBatchSize)) {
+                long start = System.nanoTime();
+                writer.write(batch);
+                long end = System.nanoTime();
+                metrics.recordBatch(batch, start, end);
+                if (batchSize != null) {
+                    batchSize.update(batch.size(), end - start);
+                    maxBatchSize = batchSize.get();
+                }
+                releaseBatch();
+            }
+
+            if (error == true) {
+                //  Сбрасываем флаг ошибки
+                error = false;
+                retryDelay = 0;
+                //  Разрешаем прием сообщений в очередь
+                setAddToQueue(true);
+            }
+
+        } catch (Exception e) {
+
+            //  Перехватываются абсолютно все исключения: если исключение не перехватить, то планировщик больше не запустит поток
+            System.out.println(e);
+            metrics.recordWriteError();
+
+            if (currentSpool != null) {
+                //  Незаписанная порция уходит в спул, следующая попытка записи - после задержки
+                retryDelay = retryDelay == 0 ? retryDelayMin : Math.min(retryDelay * 2, retryDelayMax);
+                nextRetryTime = System.currentTimeMillis() + retryDelay;
+                error = true;
+                try {
+                    countDropped(currentSpool.append(batch));
+                } catch (Exception spoolException) {
+                    System.out.println(spoolException);
+                    countDropped(batch.size());
+                }
+            } else {
+                //  Порция теряется, прием сообщений в очередь блокируется до успешной записи
+                countDropped(batch.size());
+                if (error == false) {
+                    error = true;
+                    setAddToQueue(false);
+                }
+            }
+            releaseBatch();
+
+        }
+    }
+
+    /**
+     * Выбрать из очереди очередную порцию сообщений в {@link #batch}
+     * @return true(порция не пуста)/false(очередь пуста)
+     */
+    private boolean pollBatch(int maxBatchSize) {
+        LogData logData;
+        while (batch.size() < maxBatchSize && (logData = queue.poll()) != null) {
+            batch.add(logData);
+        }
+        return !batch.isEmpty();
+    }
+
+    /** Переписать содержимое очереди в спул */
+    private void spoolQueue(DiskSpool currentSpool, int maxBatchSize) throws Exception {
+        while (pollBatch(maxBatchSize)) {
+            countDropped(currentSpool.append(batch));
+            releaseBatch();
+        }
+    }
+
+    /** Освободить сообщения порции(см. {@link LogData#release()}) и очистить порцию */
+    private void releaseBatch() {
+        for (LogData logData: batch) logData.release();
+        batch.clear();
+    }
+
+    /**
+     * Момент события в милисекундах от 1970-01-01: зафиксированный при добавлении в логер(для сообщений из спула - сохраненный в спуле).
+     * Для данных, переданных в очередь в обход методов add() логера, - текущий момент
+     */
+    static long epochMillisOf(LogData logData) {
+        long epochMillis = logData.epochMillis;
+        return epochMillis != 0 ? epochMillis : System.currentTimeMillis();
+    }
+
+    /** Момент события в наносекундах от 1970-01-01(см. {@link #epochMillisOf(LogData)}) */
+    static long epochNanosOf(LogData logData) {
+        return epochMillisOf(logData) * 1_000_000L;
     }
 }
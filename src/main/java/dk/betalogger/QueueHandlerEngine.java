@@ -6,6 +6,9 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Абстрактный класс, реализующий каркас механизма обработки очереди.
@@ -13,55 +16,246 @@ import java.util.concurrent.*;
  * В данном классе полностью прописана логика создания, запуска, останова отдельного потока для обработки очереди, а также настройка периода опроса очереди.
  * В порожденном классе следует через конструктор или иным способом получить очередь для обработки и присвоить ссылку на эту очередь переменной queue.
  * В порожденном классе необходимо прописать логику обработки очереди в ламбда-переменной threadCode.
- * @version 3.0 (переписана логика старта/останова потока: останавливается и запускатся именно пользовательский поток, а не исполнитель)
+ * <br/><br/>
+ * Поток может работать в одном из двух режимов, определяемых стратегией {@link IdleStrategy}:<br/>
+ * - по планировщику: threadCode запускается с фиксированной задержкой pollPeriod;<br/>
+ * - по событию: threadCode крутится в цикле, а при пустой очереди поток ожидает согласно выбранной стратегии.
+ * Добавляющая сторона будит поток вызовом {@link #signal()}.
+ * <br/><br/>
+ * Поток выделяется согласно {@link ExecutionMode}: собственный, из общего для всех логеров пула или виртуальный.
+ * @version 5.0 (добавлены общий пул потоков и виртуальные потоки)
  */
 abstract class QueueHandlerEngine {
 
     /**
      * Очередь, которая будет обрабатываться потоком, код которого прописан в threadCode.
      * Тем или иным способом передается в порожденный класс.
+     * Ссылка может быть подменена извне(например, курсором кольцевого буфера входной очереди), поэтому поле volatile.
      */
-    Queue<LogData> queue;
+    volatile Queue<LogData> queue;
 
     /** Код, который работает с очередью. Прописывается в порожденных классах. */
     Runnable threadCode = () -> {};
 
+    /**
+     * Код, который выполняется при останове потока(например, закрытие ресурсов). Прописывается в порожденных классах.
+     * Выполняется строго после завершения последнего прохода threadCode.
+     */
+    Runnable threadStopCode = () -> {};
+
     @Setter(AccessLevel.PACKAGE) private long pollPeriod = 1000l;                            //  период опроса очереди
     @Setter(AccessLevel.PACKAGE) private TimeUnit pollPeriodUnit = TimeUnit.MILLISECONDS;    //  единицы времени используемые для опеределения периода опроса
+    @Setter(AccessLevel.PACKAGE) private volatile IdleStrategy idleStrategy = IdleStrategy.SCHEDULED;   //  стратегия работы потока
+    @Setter(AccessLevel.PACKAGE) private volatile ExecutionMode executionMode = ExecutionMode.DEDICATED; //  способ выделения потока
+
+    private ScheduledExecutorService dedicatedExecutor;         //  собственный исполнитель режима DEDICATED. Создается при первом запуске
+    private Future<?> scheduledFuture;                          //  объект, управляющий работающим потоком
+    private AtomicBoolean running;                              //  признак работы текущего запуска потока
+    private volatile Thread worker;                             //  поток, крутящий цикл в режиме пробуждения по событию
+    private volatile Thread loopThread;                         //  виртуальный поток, крутящий цикл в режиме VIRTUAL
 
-    private ScheduledExecutorService executorService;           //  исполнитель, запускающий поток threadCode
-    private ScheduledFuture scheduledFuture;                    //  объект, управляющий работающим потоком
+    //  Задачи обработки очереди, которые ставит в общий пул вызов signal()
+    private volatile ScheduledExecutorService drainExecutor;    //  общий пул. null - задачи не ставятся
+    private volatile AtomicBoolean drainRunning;                //  флаг работы запуска, к которому относятся задачи
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);   //  задача уже поставлена в пул
 
     /**
-     * Фабрика, которая унифицирует создание потоков с заданными свойствами. В данном случае будут создаваться потоки-демоны.
-     * Фабрика передается в метод, который используется для создания исполнителя.
-     * Созданный исполнитель, при запуске потока, принимает переменную, ссылающаяся на объект, который реализуют тип Runnable.
-     * Созданный исполнитель вызывает CustomThreadFactory.newThread(Runnable), тем самым создавая поток с нужными свойствами.
+     * Блокировка, под которой выполняются threadCode и threadStopCode.
+     * В общем пуле и в виртуальных потоках проходы threadCode могут выполняться разными потоками, а код завершения - потоком,
+     * вызвавшим останов. Блокировка гарантирует, что они не выполняются одновременно и видят изменения друг друга.
      */
-    private class CustomThreadFactory implements ThreadFactory {
-        @Override
-        public Thread newThread(Runnable threadCode) {
-            Thread thread = new Thread(threadCode);
-            thread.setDaemon(true);
-            return thread;
-        }
-    }
+    private final ReentrantLock runLock = new ReentrantLock();
 
-    QueueHandlerEngine() {
-        executorService = Executors.newScheduledThreadPool(1, new CustomThreadFactory());
-    }
+    //  Параметры ожидания при пустой очереди в режиме пробуждения по событию
+    private static final int SPIN_TRIES = 100;                  //  количество холостых итераций до перехода к Thread.yield()
+    private static final int YIELD_TRIES = 100;                 //  количество уступок процессора до перехода к парковке
+    private static final long MIN_PARK_NANOS = 1_000L;          //  начальный таймаут парковки
+    private static final int IDLE_LIMIT = SPIN_TRIES + YIELD_TRIES + 30;     //  предел счетчика холостых итераций
 
     /** Запустить поток */
     void start() {
         if (isThreadDone()) {
-            scheduledFuture = executorService.scheduleWithFixedDelay(threadCode, 0, pollPeriod, pollPeriodUnit);
+            //  Для каждого запуска заводится свой флаг. Если предыдущий проход еще не успел завершиться после останова,
+            //  то он не будет продолжен новым запуском
+            AtomicBoolean loopRunning = new AtomicBoolean(true);
+            running = loopRunning;
+
+            ExecutionMode mode = executionMode;
+            ExecutorService virtualExecutor = mode == ExecutionMode.VIRTUAL ? WorkerPools.virtualExecutor() : null;
+
+            if (virtualExecutor != null) {
+                scheduledFuture = virtualExecutor.submit(() -> virtualLoop(loopRunning));
+            } else if (mode == ExecutionMode.DEDICATED) {
+                if (dedicatedExecutor == null) dedicatedExecutor = WorkerPools.newDedicatedScheduler();
+                if (idleStrategy == IdleStrategy.SCHEDULED) {
+                    scheduledFuture = dedicatedExecutor.scheduleWithFixedDelay(() -> runThreadCode(loopRunning), 0, pollPeriod, pollPeriodUnit);
+                } else {
+                    scheduledFuture = dedicatedExecutor.submit(() -> eventLoop(loopRunning));
+                }
+            } else {
+                //  Общий пул: периодический опрос, а в режиме пробуждения по событию еще и задачи, которые ставит signal()
+                ScheduledExecutorService sharedPool = WorkerPools.sharedPool();
+                if (idleStrategy != IdleStrategy.SCHEDULED) {
+                    drainRunning = loopRunning;
+                    drainExecutor = sharedPool;
+                }
+                scheduledFuture = sharedPool.scheduleWithFixedDelay(() -> runThreadCode(loopRunning), 0, pollPeriod, pollPeriodUnit);
+            }
         }
     }
 
     /** Остановить поток */
     void stop() {
         if (isThreadDone() == false) {
+            running.set(false);
+            running = null;
+            drainExecutor = null;
+            drainRunning = null;
+            signal();
+            Thread thread = loopThread;
+            if (thread != null) LockSupport.unpark(thread);
             scheduledFuture.cancel(false);
+
+            //  Дожидаемся завершения текущего прохода и выполняем код завершения,
+            //  чтобы после останова потока ресурсы гарантированно были освобождены
+            runLock.lock();
+            try {
+                threadStopCode.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                runLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Разбудить поток.
+     * <br/><br/>
+     * Вызывается добавляющей стороной после помещения сообщения в очередь. В режиме по планировщику ничего не делает.
+     * В общем пуле ставит в пул задачу обработки очереди, если она еще не поставлена.
+     */
+    void signal() {
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        } else if (drainExecutor != null) {
+            scheduleDrain();
+        }
+    }
+
+    /** Поставить в общий пул задачу обработки очереди, если она еще не поставлена */
+    private void scheduleDrain() {
+        ScheduledExecutorService executor = drainExecutor;
+        AtomicBoolean loopRunning = drainRunning;
+        if (executor != null && loopRunning != null && drainScheduled.get() == false && drainScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(loopRunning));
+        }
+    }
+
+    /**
+     * Задача обработки очереди в общем пуле.
+     * <br/><br/>
+     * Если очередь уже обрабатывается другим потоком пула, то задача не ждет его, а завершается: тот поток по окончании
+     * прохода сам проверит очередь и при необходимости поставит задачу заново. Так поток пула не простаивает на блокировке.
+     */
+    private void drain(AtomicBoolean loopRunning) {
+        drainScheduled.set(false);
+        if (runLock.tryLock()) {
+            try {
+                if (loopRunning.get()) threadCode.run();
+            } finally {
+                runLock.unlock();
+            }
+            if (loopRunning.get() && queue != null && queue.isEmpty() == false) scheduleDrain();
+        }
+    }
+
+    /** Выполнить проход threadCode, если данный запуск потока еще не остановлен */
+    private void runThreadCode(AtomicBoolean loopRunning) {
+        runLock.lock();
+        try {
+            if (loopRunning.get()) threadCode.run();
+        } finally {
+            runLock.unlock();
+        }
+        //  Сообщения могли прийти, пока другой поток пула уступил этому обработку очереди
+        if (drainRunning == loopRunning && queue != null && queue.isEmpty() == false) scheduleDrain();
+    }
+
+    /**
+     * Цикл обработки очереди в виртуальном потоке.
+     * В режиме по планировщику между проходами поток паркуется на период опроса, не занимая поток ОС.
+     * @param loopRunning Флаг работы данного экземпляра цикла
+     */
+    private void virtualLoop(AtomicBoolean loopRunning) {
+        loopThread = Thread.currentThread();
+        try {
+            if (idleStrategy != IdleStrategy.SCHEDULED) {
+                eventLoop(loopRunning);
+                return;
+            }
+            long periodNanos = pollPeriodUnit.toNanos(pollPeriod);
+            while (loopRunning.get()) {
+                runThreadCode(loopRunning);
+                long deadline = System.nanoTime() + periodNanos;
+                long remaining;
+                while (loopRunning.get() && (remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+        } finally {
+            loopThread = null;
+        }
+    }
+
+    /**
+     * Цикл обработки очереди в режиме пробуждения по событию.
+     * @param loopRunning Флаг работы данного экземпляра цикла
+     */
+    private void eventLoop(AtomicBoolean loopRunning) {
+        worker = Thread.currentThread();
+        try {
+            int idleCount = 0;
+            while (loopRunning.get()) {
+                runThreadCode(loopRunning);
+                if (queue == null || queue.isEmpty()) {
+                    idle(idleCount);
+                    if (idleCount < IDLE_LIMIT) idleCount++;
+                } else {
+                    idleCount = 0;
+                }
+            }
+        } finally {
+            worker = null;
+        }
+    }
+
+    /**
+     * Ожидание при пустой очереди согласно стратегии {@link #idleStrategy}.
+     * <br/><br/>
+     * Таймаут парковки удваивается с каждой холостой итерацией, но не превышает периода опроса очереди.
+     * Парковка прерывается вызовом {@link #signal()}, поэтому сообщение не ждет окончания таймаута.
+     * @param idleCount Количество холостых итераций подряд
+     */
+    private void idle(int idleCount) {
+        switch (idleStrategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                if (idleCount < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (idleCount < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                } else {
+                    int shift = idleCount - SPIN_TRIES - YIELD_TRIES;
+                    long maxParkNanos = Math.max(pollPeriodUnit.toNanos(pollPeriod), MIN_PARK_NANOS);
+                    LockSupport.parkNanos(this, Math.min(MIN_PARK_NANOS << shift, maxParkNanos));
+                }
         }
     }
 
@@ -1,11 +1,27 @@
 package dk.betalogger;
 
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
 /** Простая фабрика по созданию управляющих объктов очередей */
 class QueueHandlerFactory {
 
-    /** Создать управляющий объект входной очереди */
-    static InputQueueHandler createInputQueueHandler() {
-        return new AlphaInputQueueHandler();
+    /**
+     * Создать управляющий объект входной очереди
+     * @param inputQueueType Тип входной очереди
+     * @param capacity Емкость входной очереди. Используется реализациями с ограниченной емкостью. 0 - емкость по умолчанию
+     */
+    static InputQueueHandler createInputQueueHandler(InputQueueType inputQueueType, int capacity) {
+        switch (inputQueueType) {
+            case RING_BUFFER:
+                return new RingInputQueueHandler(capacity > 0 ? capacity : LogRingBuffer.DEFAULT_CAPACITY);
+            case STRIPED:
+                return new StripedInputQueueHandler(capacity > 0 ? capacity : StripedInputQueueHandler.DEFAULT_BUFFER_SIZE);
+            case QUEUE:
+            default:
+                return new AlphaInputQueueHandler();
+        }
     }
 
     /** Создать управляющий объект логирующей очереди в консоль */
@@ -30,4 +46,38 @@ class QueueHandlerFactory {
         }
     }
 
+    /** Создать управляющий объект логирующей очереди для логирования по сети */
+    static NetworkQueueHandler createNetworkQueueHandler() {
+        return new NetworkQueueHandler();
+    }
+
+    /** Создать управляющий объект логирующей очереди для подключаемого места назначения логирования */
+    static SinkQueueHandler createSinkQueueHandler(LogSink sink) {
+        return new SinkQueueHandler(sink);
+    }
+
+    /**
+     * Найти подключаемое место назначения логирования через {@link ServiceLoader}
+     * @param sinkName Имя вида логирования({@link LogSink#getName()})
+     * @return Новый экземпляр места назначения или null, если реализации с таким именем нет
+     */
+    static LogSink loadSink(String sinkName) {
+        Iterator<LogSink> iterator = ServiceLoader.load(LogSink.class).iterator();
+        try {
+            while (iterator.hasNext()) {
+                try {
+                    LogSink sink = iterator.next();
+                    if (sinkName.equals(sink.getName())) return sink;
+                } catch (ServiceConfigurationError e) {
+                    //  Реализация, которую не удалось создать, не мешает найти остальные
+                    System.out.println(e);
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            //  Ошибка в файле описания реализаций
+            System.out.println(e);
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,63 @@
+package dk.betalogger;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики управляющего объекта очереди.
+ * <br/><br/>
+ * Счетчики, которые увеличиваются добавляющими потоками, построены на LongAdder, чтобы не создавать конкуренции между ними.
+ * Счетчики записи увеличиваются только потоком, обслуживающим очередь.
+ */
+class QueueMetrics {
+
+    /** Сообщений помещено в очередь */
+    final LongAdder enqueued = new LongAdder();
+
+    /** Сообщений отброшено, пока прием в очередь был заблокирован после ошибки записи */
+    final LongAdder droppedWhileBlocked = new LongAdder();
+
+    //  Запись в место назначения
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchTotalNanos = new AtomicLong();
+    private final AtomicLong batchMaxNanos = new AtomicLong();
+
+    /** Задержка от добавления сообщения в логер до окончания его записи в место назначения */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Учесть успешно записанную порцию
+     * @param batch Порция сообщений
+     * @param startNanos Момент начала записи(System.nanoTime())
+     * @param endNanos Момент окончания записи(System.nanoTime())
+     */
+    void recordBatch(List<LogData> batch, long startNanos, long endNanos) {
+        long duration = endNanos - startNanos;
+        batches.incrementAndGet();
+        written.addAndGet(batch.size());
+        batchTotalNanos.addAndGet(duration);
+        batchMaxNanos.accumulateAndGet(duration, Math::max);
+        for (LogData logData: batch) {
+            if (logData.enqueueNanos != 0) latency.record(endNanos - logData.enqueueNanos);
+        }
+    }
+
+    /** Учесть ошибку записи */
+    void recordWriteError() {
+        writeErrors.incrementAndGet();
+    }
+
+    /**
+     * Снимок метрик
+     * @param queueDepth Текущая глубина очереди
+     * @param dropped Количество отброшенных сообщений
+     */
+    QueueMetricsSnapshot snapshot(long queueDepth, long dropped) {
+        long[] counts = latency.snapshot();
+        return new QueueMetricsSnapshot(enqueued.sum(), queueDepth, dropped, droppedWhileBlocked.sum(),
+                written.get(), writeErrors.get(), batches.get(), batchTotalNanos.get(), batchMaxNanos.get(), counts);
+    }
+}
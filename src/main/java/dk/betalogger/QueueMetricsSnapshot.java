@@ -0,0 +1,95 @@
+package dk.betalogger;
+
+import lombok.Getter;
+
+/**
+ * Метрики очереди и места назначения логирования. Неизменяемый снимок на момент запроса.
+ * <br/><br/>
+ * Счетчики накапливаются с момента создания логера. Скорости добавления и записи вычисляются как разность
+ * счетчиков двух снимков, деленная на интервал между ними.
+ */
+@Getter
+public class QueueMetricsSnapshot {
+
+    /** Количество сообщений, помещенных в очередь */
+    private final long enqueuedCount;
+
+    /** Текущая глубина очереди(количество сообщений, ожидающих обработки) */
+    private final long queueDepth;
+
+    /** Количество отброшенных сообщений(очередь заполнена, логер остановлен, ошибка записи) */
+    private final long droppedCount;
+
+    /** Количество сообщений, отброшенных, пока прием в очередь был заблокирован после ошибки записи */
+    private final long droppedWhileBlockedCount;
+
+    /** Количество сообщений, записанных в место назначения */
+    private final long writtenCount;
+
+    /** Количество ошибок записи */
+    private final long writeErrorCount;
+
+    /** Количество записанных порций */
+    private final long batchCount;
+
+    /** Суммарная длительность записи порций, в наносекундах */
+    private final long batchTotalNanos;
+
+    /** Максимальная длительность записи порции, в наносекундах */
+    private final long batchMaxNanos;
+
+    /**
+     * Гистограмма задержки от добавления сообщения в логер до окончания его записи в место назначения.
+     * Элемент i - количество сообщений с задержкой от 2^i до 2^(i+1)-1 наносекунд
+     */
+    private final long[] latencyBuckets;
+
+    QueueMetricsSnapshot(long enqueuedCount, long queueDepth, long droppedCount, long droppedWhileBlockedCount,
+                         long writtenCount, long writeErrorCount, long batchCount, long batchTotalNanos, long batchMaxNanos,
+                         long[] latencyBuckets) {
+        this.enqueuedCount = enqueuedCount;
+        this.queueDepth = queueDepth;
+        this.droppedCount = droppedCount;
+        this.droppedWhileBlockedCount = droppedWhileBlockedCount;
+        this.writtenCount = writtenCount;
+        this.writeErrorCount = writeErrorCount;
+        this.batchCount = batchCount;
+        this.batchTotalNanos = batchTotalNanos;
+        this.batchMaxNanos = batchMaxNanos;
+        this.latencyBuckets = latencyBuckets;
+    }
+
+    /** Средняя длительность записи порции, в наносекундах */
+    public long getBatchAverageNanos() {
+        return batchCount > 0 ? batchTotalNanos / batchCount : 0;
+    }
+
+    /** Медиана задержки записи сообщения(оценка сверху), в наносекундах */
+    public long getLatencyP50Nanos() {
+        return LatencyHistogram.percentile(latencyBuckets, 50);
+    }
+
+    /** 99-й процентиль задержки записи сообщения(оценка сверху), в наносекундах */
+    public long getLatencyP99Nanos() {
+        return LatencyHistogram.percentile(latencyBuckets, 99);
+    }
+
+    /** 99.9-й процентиль задержки записи сообщения(оценка сверху), в наносекундах */
+    public long getLatencyP999Nanos() {
+        return LatencyHistogram.percentile(latencyBuckets, 99.9);
+    }
+
+    /** Максимальная задержка записи сообщения(оценка сверху), в наносекундах */
+    public long getLatencyMaxNanos() {
+        return LatencyHistogram.percentile(latencyBuckets, 100);
+    }
+
+    @Override
+    public String toString() {
+        return "QueueMetricsSnapshot{enqueued=" + enqueuedCount + ", depth=" + queueDepth + ", dropped=" + droppedCount
+                + ", droppedWhileBlocked=" + droppedWhileBlockedCount + ", written=" + writtenCount
+                + ", writeErrors=" + writeErrorCount + ", batches=" + batchCount + ", batchAverageNanos=" + getBatchAverageNanos()
+                + ", batchMaxNanos=" + batchMaxNanos + ", latencyP50Nanos=" + getLatencyP50Nanos()
+                + ", latencyP99Nanos=" + getLatencyP99Nanos() + ", latencyMaxNanos=" + getLatencyMaxNanos() + "}";
+    }
+}
@@ -0,0 +1,122 @@
+package dk.betalogger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реализация управляющего объекта входной очереди на базе кольцевого буфера {@link LogRingBuffer}.
+ * <br/><br/>
+ * Производители публикуют сообщение в буфер один раз. Потока-распределителя нет: каждый управляющий объект логирующей очереди
+ * при регистрации получает собственный курсор в буфере, который подменяет его собственную очередь, и читает буфер напрямую.
+ * Таким образом, на каждое сообщение не создается ни одного узла связного списка и нет лишнего перехода между потоками.
+ * Данные из пула логера возвращаются в пул после того, как их прочитали и освободили все курсоры.
+ */
+class RingInputQueueHandler extends InputQueueHandler {
+
+    /** Кольцевой буфер */
+    private final LogRingBuffer ringBuffer;
+
+    /** Курсоры, выданные управляющим объектам логирующих очередей */
+    private final Map<AddingToQueue, LogRingBuffer.Cursor> cursorMap = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор
+     * @param capacity Размер кольцевого буфера. Округляется вверх до степени двойки
+     */
+    RingInputQueueHandler(int capacity) {
+        ringBuffer = new LogRingBuffer(capacity);
+    }
+
+    /** Публикация в кольцевом буфере сообщения, прошедшего подавление */
+    private final AddingToQueue publisher = this::publish;
+
+    /**
+     * Публикация нового сообщения в кольцевом буфере.
+     * Распределителя у кольцевого буфера нет, поэтому подавление лавины сообщений выполняется добавляющей стороной под блокировкой.
+     */
+    @Override
+    public void offer(LogData logData) {
+        if (isEnable()) {
+            if (suppressor.isActive()) {
+                synchronized (suppressor) {
+                    suppressor.offer(logData, publisher);
+                }
+            } else {
+                publish(logData);
+            }
+        } else {
+            countDropped(1);
+            logData.release();
+        }
+    }
+
+    /** Публикация сообщения. После публикации владельцами сообщения остаются только курсоры */
+    private void publish(LogData logData) {
+        ringBuffer.publish(logData);
+        logData.release();
+        metrics.enqueued.increment();
+        for (LogRingBuffer.Cursor cursor: ringBuffer.getCursors()) {
+            cursor.getOwner().signal();
+        }
+    }
+
+    /**
+     * Регистрация логирующей очереди.
+     * <br/><br/>
+     * При первой регистрации управляющему объекту выдается курсор, который заменяет ему собственную очередь.
+     * Курсор остается за управляющим объектом и после снятия регистрации. При повторной регистрации курсор
+     * переводится на следующее публикуемое сообщение: как и в собственной очереди, сообщения, опубликованные,
+     * пока вид логирования был выключен, в него не попадают.
+     * Курсор может быть выдан только управляющему объекту логирующей очереди {@link QueueHandler}.
+     */
+    @Override
+    void registerLoggingQueue(AddingToQueue queue) {
+        if (queue instanceof QueueHandler) {
+            LogRingBuffer.Cursor cursor = cursorMap.computeIfAbsent(queue, q -> {
+                QueueHandler queueHandler = (QueueHandler) q;
+                LogRingBuffer.Cursor newCursor = ringBuffer.newCursor(queueHandler);
+                queueHandler.queue = newCursor;
+                return newCursor;
+            });
+            if (cursor.isRegistered() == false) {
+                //  Поток владельца курсора остановлен при снятии регистрации и запускается после регистрации
+                cursor.skipToEnd();
+                cursor.setRegistered(true);
+            }
+        }
+    }
+
+    @Override
+    void unregisterLoggingQueue(AddingToQueue queue) {
+        LogRingBuffer.Cursor cursor = cursorMap.get(queue);
+        if (cursor != null) cursor.setRegistered(false);
+    }
+
+    @Override
+    boolean hasLoggingQueues() {
+        for (LogRingBuffer.Cursor cursor: ringBuffer.getCursors()) {
+            if (cursor.isRegistered()) return true;
+        }
+        return false;
+    }
+
+    /** Глубина очереди - отставание самого медленного курсора */
+    @Override
+    long getQueueDepth() {
+        long depth = 0;
+        for (LogRingBuffer.Cursor cursor: ringBuffer.getCursors()) {
+            depth = Math.max(depth, cursor.size());
+        }
+        return depth;
+    }
+
+    /** Емкость кольцевого буфера задается при его создании и не меняется */
+    @Override
+    void setCapacity(int capacity) {
+    }
+
+    /** Потока-распределителя у данной реализации нет */
+    @Override
+    void start() {
+    }
+}
@@ -0,0 +1,30 @@
+package dk.betalogger;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/** Период ротации файла лога по времени */
+public enum RotationPeriod {
+    /** Ротация по времени не производится */
+    NONE,
+    /** Ротация в начале каждого часа */
+    HOURLY,
+    /** Ротация в начале каждых суток */
+    DAILY;
+
+    /**
+     * Начало следующего периода
+     * @param time Момент времени внутри текущего периода
+     * @return Начало следующего периода или null для {@link #NONE}
+     */
+    LocalDateTime nextPeriodStart(LocalDateTime time) {
+        switch (this) {
+            case HOURLY:
+                return time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            case DAILY:
+                return time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dk.betalogger;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Готовые маршруты видов логирования(см. {@link BetaLogger#setLoggingRoute(String, Predicate)}).
+ * <br/><br/>
+ * Маршруты комбинируются стандартными методами {@link Predicate#and(Predicate)}, {@link Predicate#or(Predicate)}
+ * и {@link Predicate#negate()}. Например, все сообщения, кроме аудита:
+ * <pre>
+ * betaLogger.setLoggingRoute(LoggingType.FILE, Routes.tag("audit").negate());
+ * </pre>
+ */
+public final class Routes {
+
+    private Routes() {
+    }
+
+    /**
+     * Сообщения с уровнем важности не ниже заданного
+     * @param level Минимальный уровень важности
+     */
+    public static Predicate<LogData> level(Level level) {
+        return logData -> logData.getLevel().compareTo(level) >= 0;
+    }
+
+    /**
+     * Сообщения с уровнем важности из заданного набора
+     * @param first Уровень важности
+     * @param rest Остальные уровни важности
+     */
+    public static Predicate<LogData> levels(Level first, Level... rest) {
+        Set<Level> levels = EnumSet.of(first, rest);
+        return logData -> levels.contains(logData.getLevel());
+    }
+
+    /**
+     * Сообщения с одним из заданных тегов(см. {@link LogData#getTag()})
+     * @param tags Теги
+     */
+    public static Predicate<LogData> tag(String... tags) {
+        if (tags.length == 1) {
+            String tag = tags[0];
+            return logData -> tag.equals(logData.getTag());
+        }
+        Set<String> tagSet = new HashSet<>(Arrays.asList(tags));
+        return logData -> {
+            String tag = logData.getTag();
+            return tag != null && tagSet.contains(tag);
+        };
+    }
+
+    /** Сообщения без тега */
+    public static Predicate<LogData> untagged() {
+        return logData -> logData.getTag() == null;
+    }
+}
@@ -0,0 +1,63 @@
+package dk.betalogger;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Управляющий объект логирующей очереди для подключаемого места назначения логирования {@link LogSink}.
+ * <br/><br/>
+ * Очередь выбирается порциями, размер которых подбирается по длительности записи({@link AdaptiveBatchSize}).
+ * Обработка ошибок записи(блокировка очереди или спул) - общая для всех видов логирования, см. {@link QueueHandler#drainQueue(BatchWriter, int)}.
+ */
+class SinkQueueHandler extends QueueHandler {
+
+    /** Место назначения логирования */
+    private final LogSink sink;
+
+    /** Подбор размера порции */
+    private final AdaptiveBatchSize batchSize = new AdaptiveBatchSize();
+
+    SinkQueueHandler(LogSink sink) {
+        this.sink = sink;
+        queue = new ConcurrentLinkedQueue<LogData>();
+        threadCode = () -> drainQueue(this::writeBatch, batchSize);
+        threadStopCode = () -> {
+            closeSink();
+            closeSpool();
+        };
+    }
+
+    /** Передать порцию в место назначения. Если очередь опустела, то буферизованные данные сбрасываются */
+    private void writeBatch(List<LogData> batch) throws Exception {
+        sink.onBatch(batch);
+        if (queue.isEmpty()) sink.flush();
+    }
+
+    /** Сбросить данные и освободить ресурсы места назначения. Вызывается при останове потока */
+    private void closeSink() {
+        try {
+            sink.flush();
+        } catch (Exception e) {
+            System.out.println(e);
+        }
+        try {
+            sink.close();
+        } catch (Exception e) {
+            System.out.println(e);
+        }
+    }
+
+    LogSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Определение параметров подбора размера порции
+     * @param maxBatchSize Максимальный размер порции
+     * @param maxLatency Целевое время записи порции, в милисекундах
+     */
+    SinkQueueHandler setBatching(int maxBatchSize, long maxLatency) {
+        batchSize.setLimits(maxBatchSize, maxLatency);
+        return this;
+    }
+}
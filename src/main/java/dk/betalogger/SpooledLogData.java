@@ -0,0 +1,26 @@
+package dk.betalogger;
+
+/**
+ * Данные для логирования, прочитанные из спула {@link DiskSpool}.
+ * <br/><br/>
+ * Хранят момент события, сохраненный в спуле вместе с текстом.
+ */
+class SpooledLogData extends LogData {
+
+    private final String message;
+
+    /**
+     * Конструктор
+     * @param epochMillis Момент события в милисекундах от 1970-01-01
+     * @param message Текст сообщения
+     */
+    SpooledLogData(long epochMillis, String message) {
+        this.epochMillis = epochMillis;
+        this.message = message;
+    }
+
+    @Override
+    public String getStringForLogging() {
+        return message;
+    }
+}
@@ -0,0 +1,353 @@
+package dk.betalogger;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Реализация управляющего объекта входной очереди на базе собственных буферов потоков-производителей.
+ * <br/><br/>
+ * Каждый поток, вызывающий add(), при первом вызове получает собственный кольцевой буфер на одного производителя
+ * и одного потребителя. Добавление сообщения не требует ни одной атомарной операции сравнения с обменом и не касается
+ * общих для производителей данных, поэтому add() масштабируется с количеством ядер.
+ * <br/><br/>
+ * Сообщение сохраняется в буфере вместе с моментом добавления, зафиксированным логером. Поток-распределитель сливает буферы
+ * в порядке моментов добавления и раскладывает сообщения по логирующим очередям. Порядок сообщений одного производителя
+ * сохраняется всегда, порядок сообщений разных производителей - с точностью до одного прохода распределителя.
+ * <br/><br/>
+ * При заполнении буфера производитель ждет распределителя при политиках {@link BackpressurePolicy#BLOCK}
+ * и {@link BackpressurePolicy#BLOCK_TIMEOUT}, при остальных политиках сообщение отбрасывается. Вытеснение старых сообщений и выборка в буфере производителя не поддерживаются:
+ * производитель не может забирать сообщения из буфера, не мешая распределителю.
+ * <br/><br/>
+ * Буфер завершившегося потока удаляется распределителем после того, как все его сообщения разложены.
+ */
+class StripedInputQueueHandler extends InputQueueHandler {
+
+    /** Размер буфера производителя по умолчанию */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 12;
+
+    /** Пауза производителя в ожидании места в буфере */
+    private static final long FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /** Список ссылок на логирующие очереди, в которые будут разбрасываться сообщения из входной очереди */
+    private final Set<AddingToQueue> loggingQueueList = new CopyOnWriteArraySet<>();
+
+    /** Снимок списка логирующих очередей. Перебор массива, в отличие от перебора множества, не создает итератор на каждое сообщение */
+    private volatile AddingToQueue[] loggingQueues = new AddingToQueue[0];
+
+    /** Распределение сообщения по логирующим очередям текущего прохода. Получатель сообщений, прошедших подавление */
+    private AddingToQueue[] passQueues;
+    private final AddingToQueue fanOut = this::fanOut;
+
+    /** Буферы всех производителей */
+    private final List<ProducerBuffer> buffers = new CopyOnWriteArrayList<>();
+
+    /** Буфер текущего потока-производителя */
+    private final ThreadLocal<ProducerBuffer> localBuffer = ThreadLocal.withInitial(this::newBuffer);
+
+    /** Размер буферов, создаваемых для новых производителей. Степень двойки */
+    private volatile int bufferSize;
+
+    /** Буферы, упорядоченные по моменту добавления первого неразложенного сообщения. Доступна только потоку-распределителю */
+    private final PriorityQueue<ProducerBuffer> mergeQueue = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.headStamp() - b.headStamp(), 0));
+
+    /**
+     * Конструктор
+     * @param bufferSize Размер буфера каждого производителя. Округляется вверх до степени двойки
+     */
+    StripedInputQueueHandler(int bufferSize) {
+        this.bufferSize = powerOfTwo(bufferSize);
+        queue = new BufferView();
+        threadCode = () -> {
+
+            AddingToQueue[] queues = loggingQueues;
+            if (queues.length > 0) {
+                merge(queues);
+            }
+        };
+    }
+
+    /** Округлить вверх до степени двойки */
+    private static int powerOfTwo(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /** Создать и зарегистрировать буфер для текущего потока */
+    private ProducerBuffer newBuffer() {
+        ProducerBuffer buffer = new ProducerBuffer(bufferSize, Thread.currentThread());
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /** Добавление нового сообщения в буфер текущего потока */
+    @Override
+    public void offer(LogData logData) {
+        if (isEnable() == false) {
+            countDropped(1);
+            logData.release();
+            return;
+        }
+
+        ProducerBuffer buffer = localBuffer.get();
+        //  Момент добавления уже зафиксирован логером. Для данных, переданных в обход логера, берется текущий момент
+        long stamp = logData.enqueueNanos != 0 ? logData.enqueueNanos : System.nanoTime();
+        if (buffer.offer(logData, stamp) == false) {
+            BackpressurePolicy policy = getBackpressurePolicy();
+            long deadline = stamp + TimeUnit.MILLISECONDS.toNanos(getBlockTimeout());
+            do {
+                if ((policy != BackpressurePolicy.BLOCK && policy != BackpressurePolicy.BLOCK_TIMEOUT)
+                        || (policy == BackpressurePolicy.BLOCK_TIMEOUT && System.nanoTime() - deadline > 0)
+                        || isEnable() == false) {
+                    countDropped(1);
+                    logData.release();
+                    return;
+                }
+                //  Ждем, пока распределитель освободит место в буфере
+                signal();
+                LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+            } while (buffer.offer(logData, stamp) == false);
+        }
+        metrics.enqueued.increment();
+        signal();
+    }
+
+    /**
+     * Слить буферы производителей в порядке моментов добавления и разложить сообщения по логирующим очередям.
+     * <br/><br/>
+     * За один проход обрабатываются сообщения, опубликованные к его началу. Сообщения, добавленные во время прохода,
+     * будут обработаны следующим проходом.
+     */
+    private void merge(AddingToQueue[] queues) {
+        for (ProducerBuffer buffer: buffers) {
+            if (buffer.beginPass()) {
+                mergeQueue.add(buffer);
+            } else if (buffer.isAbandoned()) {
+                buffers.remove(buffer);
+            }
+        }
+
+        passQueues = queues;
+        boolean suppress = suppressor.isActive();
+        ProducerBuffer buffer;
+        while ((buffer = mergeQueue.poll()) != null) {
+            LogData logData = buffer.poll();
+            if (suppress) suppressor.offer(logData, fanOut);
+                else fanOut(logData);
+            if (buffer.hasPassRemaining()) mergeQueue.add(buffer);
+        }
+        if (suppress) suppressor.flushExpired(fanOut);
+    }
+
+    /** Разложить сообщение по логирующим очередям текущего прохода */
+    private void fanOut(LogData logData) {
+        encodeLine(logData);
+        for (AddingToQueue q: passQueues) {
+            if (q.accepts(logData)) {
+                logData.retain(1);
+                q.offer(logData);
+            }
+        }
+        logData.release();
+    }
+
+    /**
+     * Размер буферов для новых производителей. Буферы уже работающих потоков не пересоздаются.
+     * @param capacity Размер буфера. 0 - размер по умолчанию
+     */
+    @Override
+    void setCapacity(int capacity) {
+        bufferSize = powerOfTwo(capacity > 0 ? capacity : DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    void registerLoggingQueue(AddingToQueue queue) {
+        loggingQueueList.add(queue);
+        loggingQueues = loggingQueueList.toArray(new AddingToQueue[0]);
+    }
+
+    @Override
+    void unregisterLoggingQueue(AddingToQueue queue) {
+        loggingQueueList.remove(queue);
+        loggingQueues = loggingQueueList.toArray(new AddingToQueue[0]);
+    }
+
+    @Override
+    boolean hasLoggingQueues() {
+        return loggingQueues.length > 0;
+    }
+
+
+    /** Выравнивание: отделяет поля производителя от заголовка объекта и чужих данных в той же строке кэша */
+    private abstract static class ProducerBufferPadding {
+        long p01, p02, p03, p04, p05, p06, p07, p08;
+    }
+
+    /** Поля, которые меняет производитель */
+    private abstract static class ProducerBufferTail extends ProducerBufferPadding {
+
+        /** Позиция записи. Меняется только производителем */
+        volatile long tail;
+
+        /** Последняя известная производителю позиция чтения */
+        long cachedHead = 0;
+    }
+
+    /** Выравнивание: поля производителя и поля распределителя не должны попадать в одну строку кэша */
+    private abstract static class ProducerBufferTailPadding extends ProducerBufferTail {
+        long p11, p12, p13, p14, p15, p16, p17, p18;
+    }
+
+    /** Поля, которые меняет распределитель */
+    private abstract static class ProducerBufferHead extends ProducerBufferTailPadding {
+
+        /** Позиция чтения. Меняется только распределителем */
+        volatile long head;
+
+        /** Граница текущего прохода распределителя и позиция чтения внутри прохода */
+        long passLimit = 0;
+        long passHead = 0;
+    }
+
+    /** Выравнивание: отделяет поля распределителя от остальных полей буфера и следующих объектов */
+    private abstract static class ProducerBufferHeadPadding extends ProducerBufferHead {
+        long p21, p22, p23, p24, p25, p26, p27, p28;
+    }
+
+    /**
+     * Кольцевой буфер одного производителя.
+     * <br/><br/>
+     * Позицию записи меняет только производитель, позицию чтения - только распределитель. Обе позиции публикуются
+     * упорядоченной записью(lazySet), которой достаточно, чтобы другая сторона увидела содержимое ячеек.
+     * Поля производителя и распределителя разнесены выравниванием по разным строкам кэша, чтобы запись одной стороны
+     * не вытесняла из кэша данные другой. Поля суперклассов располагаются JVM раньше полей подклассов, поэтому выравнивание
+     * задается иерархией классов.
+     */
+    private static final class ProducerBuffer extends ProducerBufferHeadPadding {
+
+        private static final AtomicLongFieldUpdater<ProducerBufferTail> TAIL =
+                AtomicLongFieldUpdater.newUpdater(ProducerBufferTail.class, "tail");
+        private static final AtomicLongFieldUpdater<ProducerBufferHead> HEAD =
+                AtomicLongFieldUpdater.newUpdater(ProducerBufferHead.class, "head");
+
+        private final LogData[] entries;
+        private final long[] stamps;
+        private final int mask;
+
+        /** Поток-производитель. Слабая ссылка, чтобы буфер не удерживал завершившийся поток */
+        private final WeakReference<Thread> producer;
+
+        ProducerBuffer(int size, Thread producer) {
+            entries = new LogData[size];
+            stamps = new long[size];
+            mask = size - 1;
+            this.producer = new WeakReference<>(producer);
+        }
+
+        /** Добавить сообщение. Вызывается только производителем */
+        boolean offer(LogData logData, long stamp) {
+            long position = tail;
+            if (position - cachedHead >= entries.length) {
+                cachedHead = head;
+                if (position - cachedHead >= entries.length) return false;
+            }
+            int index = (int) position & mask;
+            entries[index] = logData;
+            stamps[index] = stamp;
+            TAIL.lazySet(this, position + 1);
+            return true;
+        }
+
+        /**
+         * Начать проход распределителя: зафиксировать границу опубликованных сообщений
+         * @return true(в буфере есть сообщения)/false(буфер пуст)
+         */
+        boolean beginPass() {
+            passHead = head;
+            passLimit = tail;
+            return passHead < passLimit;
+        }
+
+        boolean hasPassRemaining() {
+            return passHead < passLimit;
+        }
+
+        /** Момент добавления первого неразложенного сообщения текущего прохода */
+        long headStamp() {
+            return stamps[(int) passHead & mask];
+        }
+
+        /** Забрать очередное сообщение текущего прохода и освободить ячейку */
+        LogData poll() {
+            int index = (int) passHead & mask;
+            LogData logData = entries[index];
+            entries[index] = null;
+            HEAD.lazySet(this, ++passHead);
+            return logData;
+        }
+
+        /** Количество неразложенных сообщений */
+        int size() {
+            return (int) (tail - head);
+        }
+
+        /** Поток-производитель завершился, и все его сообщения разложены */
+        boolean isAbandoned() {
+            Thread thread = producer.get();
+            return (thread == null || thread.isAlive() == false) && size() == 0;
+        }
+    }
+
+
+    /**
+     * Представление буферов производителей в виде очереди.
+     * Используется циклом потока-распределителя только для проверки наличия сообщений.
+     */
+    private final class BufferView extends AbstractQueue<LogData> {
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (ProducerBuffer buffer: buffers) size += buffer.size();
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            for (ProducerBuffer buffer: buffers) {
+                if (buffer.size() > 0) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Iterator<LogData> iterator() {
+            throw new UnsupportedOperationException();
+        }
+
+        /** Сообщения добавляются через {@link StripedInputQueueHandler#offer(LogData)} */
+        @Override
+        public boolean offer(LogData logData) {
+            throw new UnsupportedOperationException();
+        }
+
+        /** Сообщения забираются только распределителем в {@link StripedInputQueueHandler#merge(AddingToQueue[])} */
+        @Override
+        public LogData poll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LogData peek() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dk.betalogger;
+
+import java.util.function.Supplier;
+
+/**
+ * Данные для логирования, текст которых формирует переданная функция.
+ * <br/><br/>
+ * Функция вызывается не при добавлении в логер, а при первом обращении потока логирования к данным.
+ * Результат запоминается, поэтому при нескольких видах логирования функция, как правило, вызывается один раз.
+ */
+class SuppliedLogData extends LogData {
+
+    private final Level level;
+
+    private final Supplier<String> supplier;
+
+    /** Сформированный текст. null - еще не сформирован */
+    private volatile String message;
+
+    SuppliedLogData(Level level, Supplier<String> supplier) {
+        this.level = level;
+        this.supplier = supplier;
+    }
+
+    @Override
+    public Level getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getStringForLogging() {
+        String result = message;
+        if (result == null) {
+            result = String.valueOf(supplier.get());
+            message = result;
+        }
+        return result;
+    }
+}
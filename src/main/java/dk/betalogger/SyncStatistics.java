@@ -0,0 +1,38 @@
+package dk.betalogger;
+
+import lombok.Getter;
+
+/** Статистика длительности сброса данных файла лога на диск. Неизменяемый снимок на момент запроса */
+@Getter
+public class SyncStatistics {
+
+    /** Количество сбросов на диск */
+    private final long count;
+
+    /** Суммарная длительность сбросов, в наносекундах */
+    private final long totalNanos;
+
+    /** Максимальная длительность сброса, в наносекундах */
+    private final long maxNanos;
+
+    /** Длительность последнего сброса, в наносекундах */
+    private final long lastNanos;
+
+    SyncStatistics(long count, long totalNanos, long maxNanos, long lastNanos) {
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.lastNanos = lastNanos;
+    }
+
+    /** Средняя длительность сброса, в наносекундах */
+    public long getAverageNanos() {
+        return count > 0 ? totalNanos / count : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncStatistics{count=" + count + ", averageNanos=" + getAverageNanos()
+                + ", maxNanos=" + maxNanos + ", lastNanos=" + lastNanos + "}";
+    }
+}
@@ -0,0 +1,89 @@
+package dk.betalogger;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Вывод штампа времени с точностью до милисекунд с кэшированием.
+ * <br/><br/>
+ * Часть штампа до секунд включительно(например, "dd-MM-yyyy HH:mm:ss") форматируется через DateTimeFormatter
+ * только при смене секунды и запоминается. Для каждой строки к ней дописываются лишь три цифры милисекунд.
+ * Смещение часового пояса также вычисляется один раз в секунду, поэтому переход на летнее время учитывается.
+ * <br/><br/>
+ * Объект не потокобезопасен: у каждого управляющего объекта очереди свой экземпляр.
+ */
+class TimestampRenderer {
+
+    /** Формат части штампа до секунд */
+    private final DateTimeFormatter secondFormatter;
+
+    private final ZoneId zone;
+
+    /** Секунда от 1970-01-01, для которой сформирован {@link #prefix} */
+    private long cachedSecond = Long.MIN_VALUE;
+
+    /** Смещение часового пояса в кэшированную секунду, в милисекундах */
+    private long cachedOffsetMillis;
+
+    /** Отформатированная часть штампа до секунд с разделителем милисекунд */
+    private final StringBuilder prefix = new StringBuilder(32);
+
+    /**
+     * Конструктор
+     * @param secondPattern Шаблон DateTimeFormatter части штампа до секунд. Милисекунды дописываются через точку
+     */
+    TimestampRenderer(String secondPattern) {
+        this(secondPattern, ZoneId.systemDefault());
+    }
+
+    /**
+     * Конструктор
+     * @param secondPattern Шаблон DateTimeFormatter части штампа до секунд. Милисекунды дописываются через точку
+     * @param zone Часовой пояс штампа
+     */
+    TimestampRenderer(String secondPattern, ZoneId zone) {
+        secondFormatter = DateTimeFormatter.ofPattern(secondPattern);
+        this.zone = zone;
+    }
+
+    /** Обновить кэш, если секунда сменилась */
+    private void update(long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        if (second != cachedSecond) {
+            Instant instant = Instant.ofEpochSecond(second);
+            ZoneOffset offset = zone.getRules().getOffset(instant);
+            cachedOffsetMillis = offset.getTotalSeconds() * 1000L;
+            prefix.setLength(0);
+            secondFormatter.formatTo(LocalDateTime.ofEpochSecond(second, 0, offset), prefix);
+            prefix.append('.');
+            cachedSecond = second;
+        }
+    }
+
+    /**
+     * Дописать штамп времени в строку
+     * @param epochMillis Момент в милисекундах от 1970-01-01
+     * @param builder Строка
+     */
+    void render(long epochMillis, StringBuilder builder) {
+        update(epochMillis);
+        int millis = (int) Math.floorMod(epochMillis, 1000L);
+        builder.append(prefix)
+                .append((char) ('0' + millis / 100))
+                .append((char) ('0' + millis / 10 % 10))
+                .append((char) ('0' + millis % 10));
+    }
+
+    /**
+     * Местное время в милисекундах: момент, сдвинутый на смещение часового пояса.
+     * Используется там, где местное время хранится как число(например, двоичный формат COPY PostgreSQL)
+     * @param epochMillis Момент в милисекундах от 1970-01-01
+     */
+    long toLocalMillis(long epochMillis) {
+        update(epochMillis);
+        return epochMillis + cachedOffsetMillis;
+    }
+}
@@ -0,0 +1,39 @@
+package dk.betalogger;
+
+import java.nio.ByteBuffer;
+
+/** Кодирование текста в UTF-8 без создания промежуточных объектов */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * Дописать текст в буфер в кодировке UTF-8. Непарные суррогатные символы заменяются на '?'
+     * @throws java.nio.BufferOverflowException Если в буфере недостаточно места
+     */
+    static void encode(CharSequence s, ByteBuffer buffer) {
+        int count = s.length();
+        for (int i = 0; i < count; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package dk.betalogger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Исполнители, общие для всех логеров приложения.
+ * <br/><br/>
+ * Исполнители создаются при первом обращении. Потоки общего пула - демоны и завершаются после минуты простоя,
+ * поэтому приложение, не использующее логирование, потоков не держит.
+ */
+class WorkerPools {
+
+    /** Время простоя, после которого поток пула завершается, в секундах */
+    static final long KEEP_ALIVE_SECONDS = 60L;
+
+    /** Размер общего пула по умолчанию */
+    static final int DEFAULT_SHARED_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private WorkerPools() {
+    }
+
+    /** Фабрика потоков-демонов с именами вида prefix-N */
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Создать планировщик на один поток, который завершается при простое.
+     * Используется управляющими объектами в режиме {@link ExecutionMode#DEDICATED}.
+     */
+    static ScheduledThreadPoolExecutor newDedicatedScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("BetaLogger-worker"));
+        executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        //  Отмененные периодические задачи не должны удерживать поток до наступления их следующего запуска
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /** Общий пул. Инициализируется при первом обращении(идиома Initialization-on-demand holder) */
+    private static class SharedPoolHolder {
+        static final ScheduledThreadPoolExecutor SHARED_POOL = createSharedPool();
+
+        private static ScheduledThreadPoolExecutor createSharedPool() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(DEFAULT_SHARED_POOL_SIZE, daemonThreadFactory("BetaLogger-shared"));
+            executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            executor.allowCoreThreadTimeOut(true);
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    /** Общий пул потоков режима {@link ExecutionMode#SHARED_POOL} */
+    static ScheduledThreadPoolExecutor sharedPool() {
+        return SharedPoolHolder.SHARED_POOL;
+    }
+
+    /** Установить размер общего пула */
+    static void setSharedPoolSize(int size) {
+        sharedPool().setCorePoolSize(Math.max(size, 1));
+    }
+
+    /** Исполнитель виртуальных потоков. Инициализируется при первом обращении */
+    private static class VirtualExecutorHolder {
+        static final ExecutorService VIRTUAL_EXECUTOR = createVirtualExecutor();
+
+        /**
+         * Исполнитель, запускающий каждую задачу в новом виртуальном потоке.
+         * Библиотека собирается под Java 11, поэтому метод Java 21 вызывается через отражение.
+         * @return Исполнитель или null, если виртуальные потоки недоступны
+         */
+        private static ExecutorService createVirtualExecutor() {
+            try {
+                return (ExecutorService) java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception e) {
+                System.out.println("BetaLogger: virtual threads are not available, shared pool will be used");
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Исполнитель виртуальных потоков режима {@link ExecutionMode#VIRTUAL}
+     * @return Исполнитель или null, если виртуальные потоки недоступны
+     */
+    static ExecutorService virtualExecutor() {
+        return VirtualExecutorHolder.VIRTUAL_EXECUTOR;
+    }
+}
@@ -0,0 +1,50 @@
+package dk.betalogger;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Обертка для данных, которые вызывающая сторона передала в {@link BetaLogger#add(LogData)}.
+ * <br/><br/>
+ * Момент события и общая строка лога хранятся в самом объекте данных. Объект вызывающей стороны может быть передан
+ * в логер повторно, пока предыдущее сообщение еще в очереди, поэтому эти поля заполняются только в обертке,
+ * принадлежащей логеру. Текст, уровень важности и тег берутся из исходного объекта.
+ */
+class WrappedLogData extends LogData {
+
+    private final LogData data;
+
+    WrappedLogData(LogData data) {
+        this.data = data;
+    }
+
+    @Override
+    public String getStringForLogging() {
+        return data.getStringForLogging();
+    }
+
+    @Override
+    public Level getLevel() {
+        return data.getLevel();
+    }
+
+    @Override
+    public String getTag() {
+        return data.getTag();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        data.appendTo(builder);
+    }
+
+    @Override
+    public void appendTo(CharBuffer buffer) {
+        data.appendTo(buffer);
+    }
+
+    @Override
+    public void appendTo(ByteBuffer buffer) {
+        data.appendTo(buffer);
+    }
+}
@@ -0,0 +1,97 @@
+package dk.betalogger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка добавления данных в логер через публичные методы.
+ */
+public class BetaLoggerTest {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    private BetaLogger logger;
+
+    @After
+    public void tearDown() {
+        if (logger != null) logger.stop();
+    }
+
+    @Test
+    public void callerOwnedDataCanBeAddedAgainWhileQueued() throws InterruptedException {
+        logger = new BetaLogger();
+        RecordingSink sink = new RecordingSink();
+        logger.setSinkLogging(sink);
+        logger.setLoggingQueuePollPeriod(sink.getName(), 1);
+
+        logger.start();
+
+        //  Входная очередь опрашивается раз в секунду: второе сообщение добавляется, пока первое еще в очереди
+        CallerData data = new CallerData();
+        logger.add(data);
+        logger.add(data);
+        assertEquals("caller object is not stamped", 0, data.epochMillis);
+        assertEquals(-1, data.encodedLength);
+
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (sink.received().size() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(1);
+
+        List<LogData> received = sink.received();
+        assertEquals(2, received.size());
+        assertNotSame(received.get(0), received.get(1));
+        for (LogData logData: received) {
+            assertNotSame(data, logData);
+            assertEquals("text", logData.getStringForLogging());
+            assertEquals(Level.WARN, logData.getLevel());
+            assertEquals("tag", logData.getTag());
+            assertTrue(logData.epochMillis > 0);
+        }
+    }
+
+
+    /** Собственные данные вызывающей стороны */
+    private static class CallerData extends LogData {
+        @Override
+        public String getStringForLogging() {
+            return "text";
+        }
+
+        @Override
+        public Level getLevel() {
+            return Level.WARN;
+        }
+
+        @Override
+        public String getTag() {
+            return "tag";
+        }
+    }
+
+    /** Место назначения, запоминающее полученные данные */
+    private static class RecordingSink implements LogSink {
+        private final List<LogData> received = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String getName() {
+            return "recording";
+        }
+
+        @Override
+        public void onBatch(List<LogData> batch) {
+            received.addAll(batch);
+        }
+
+        List<LogData> received() {
+            synchronized (received) {
+                return new ArrayList<>(received);
+            }
+        }
+    }
+}
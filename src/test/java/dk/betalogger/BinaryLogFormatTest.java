@@ -0,0 +1,145 @@
+package dk.betalogger;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка двоичного формата файла лога: записи, закодированные {@link BinaryLogFormat}, переводятся
+ * {@link BinaryLogDecoder} в те же строки, что были бы записаны в текстовом формате.
+ */
+public class BinaryLogFormatTest {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss.SSS");
+
+    /** Время первого сообщения: 2026-01-02 03:04:05.678 UTC в наносекундах */
+    private static final long START_NANOS = 1_767_323_045_678_000_000L;
+
+    @Test
+    public void literalAndTemplateEventsRoundTrip() throws IOException {
+        BinaryFile file = new BinaryFile();
+        file.add(START_NANOS, literal("plain text, не только ASCII"), "plain text, не только ASCII");
+        file.add(START_NANOS + 1_000_000, template("user {} logged in from {}", "alice", 42), "user alice logged in from 42");
+        //  Шаблон уже определен в блоке: повторное сообщение ссылается на него по номеру
+        file.add(START_NANOS + 2_000_000, template("user {} logged in from {}", "bob", null), "user bob logged in from null");
+        file.add(START_NANOS + 3_000_000, template("escaped \\{} and {}", "x"), "escaped {} and x");
+        file.add(START_NANOS + 4_000_000, template("a={} b={}", 1), "a=1 b={}");
+        file.add(START_NANOS + 5_000_000, template("no args {}", (Object[]) null), "no args {}");
+        file.add(START_NANOS + 6_000_000, template("extra {}", 1, 2), "extra 1");
+        //  Время сообщения может быть меньше времени предыдущего: разность кодируется со знаком
+        file.add(START_NANOS + 500_000, literal("earlier"), "earlier");
+
+        //  Новый блок заново определяет шаблоны
+        file.endBlock();
+        file.add(START_NANOS + 7_000_000, template("a={} b={}", 3, 4), "a=3 b=4");
+        file.add(START_NANOS + 8_000_000, template("user {} logged in from {}", "carol", "host"), "user carol logged in from host");
+
+        assertEquals(file.expected(), decode(file.bytes()));
+    }
+
+    @Test
+    public void recordLargerThanBufferRoundTrip() throws IOException {
+        //  Запись длиннее 64 Кб - размера буфера файлового логирования и буфера чтения декодера
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 200_000) builder.append("длинная строка ");
+        String large = builder.toString();
+
+        BinaryFile file = new BinaryFile();
+        file.add(START_NANOS, literal("before"), "before");
+        file.add(START_NANOS + 1_000_000, literal(large), large);
+        file.add(START_NANOS + 2_000_000, template("arg={}", large), "arg=" + large);
+        file.add(START_NANOS + 3_000_000, literal("after"), "after");
+
+        assertEquals(file.expected(), decode(file.bytes()));
+    }
+
+    @Test
+    public void zeroTailIsSkipped() throws IOException {
+        BinaryFile file = new BinaryFile();
+        file.add(START_NANOS, literal("first"), "first");
+        file.add(START_NANOS + 1_000_000, template("second {}", 2), "second 2");
+
+        //  Хвост сегмента, оставленный способом записи MAPPED при завершении приложения без закрытия файла
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(file.bytes());
+        out.write(new byte[100_000]);
+
+        assertEquals(file.expected(), decode(out.toByteArray()));
+    }
+
+    @Test
+    public void concatenatedFilesRoundTrip() throws IOException {
+        BinaryFile first = new BinaryFile();
+        first.add(START_NANOS, template("first file {}", 1), "first file 1");
+        first.add(START_NANOS + 1_000_000, literal("first literal"), "first literal");
+
+        //  Номер шаблона во втором файле совпадает с номером другого шаблона в первом
+        BinaryFile second = new BinaryFile();
+        second.add(START_NANOS + 60_000_000_000L, template("second file {} {}", "a", "b"), "second file a b");
+        second.add(START_NANOS + 61_000_000_000L, literal("second literal"), "second literal");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(first.bytes());
+        out.write(new byte[16]);
+        out.write(second.bytes());
+
+        assertEquals(first.expected() + second.expected(), decode(out.toByteArray()));
+    }
+
+
+    private static LogData literal(String text) {
+        return new MutableLogData(null).reset().append(text);
+    }
+
+    private static LogData template(String pattern, Object... args) {
+        return new ParameterizedLogData(Level.INFO, pattern, args);
+    }
+
+    private static String decode(byte[] bytes) throws IOException {
+        StringWriter out = new StringWriter();
+        BinaryLogDecoder.decode(new ByteArrayInputStream(bytes), out);
+        return out.toString();
+    }
+
+
+    /** Двоичный файл лога и строки, которые должны получиться при его переводе в текстовый формат */
+    private static class BinaryFile {
+        private final BinaryLogFormat format = new BinaryLogFormat();
+        private final ByteBuilder records = new ByteBuilder(256);
+        private final StringBuilder expected = new StringBuilder();
+
+        BinaryFile() {
+            records.append(BinaryLogFormat.MAGIC, 0, BinaryLogFormat.MAGIC.length);
+        }
+
+        void add(long epochNanos, LogData logData, String text) {
+            format.encode(logData, epochNanos, records);
+            LocalDateTime time = LocalDateTime.ofInstant(
+                    Instant.ofEpochSecond(epochNanos / 1_000_000_000L, epochNanos % 1_000_000_000L), ZoneId.systemDefault());
+            expected.append(TIME_FORMATTER.format(time)).append("  ").append(text).append('\n');
+        }
+
+        void endBlock() {
+            format.endBlock();
+        }
+
+        byte[] bytes() {
+            byte[] bytes = new byte[records.length()];
+            System.arraycopy(records.array(), 0, bytes, 0, records.length());
+            return bytes;
+        }
+
+        String expected() {
+            return expected.toString();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package dk.betalogger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка возврата данных в пул: каждый объект, переданный в логер, возвращается в пул ровно один раз,
+ * после того как его записали или отбросили все виды логирования.
+ */
+public class LogDataPoolTest {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    private static final int MESSAGES = 300;
+
+    private BetaLogger logger;
+
+    @After
+    public void tearDown() {
+        if (logger != null) logger.stop();
+    }
+
+    @Test
+    public void queueReturnsEveryMessageOnce() throws InterruptedException {
+        twoSinksReturnEveryMessageOnce(InputQueueType.QUEUE);
+    }
+
+    @Test
+    public void ringBufferReturnsEveryMessageOnce() throws InterruptedException {
+        twoSinksReturnEveryMessageOnce(InputQueueType.RING_BUFFER);
+    }
+
+    @Test
+    public void stripedReturnsEveryMessageOnce() throws InterruptedException {
+        twoSinksReturnEveryMessageOnce(InputQueueType.STRIPED);
+    }
+
+    @Test
+    public void queueReturnsFilteredMessagesOnce() throws InterruptedException {
+        filteredSinkReturnsEveryMessageOnce(InputQueueType.QUEUE);
+    }
+
+    @Test
+    public void ringBufferReturnsFilteredMessagesOnce() throws InterruptedException {
+        filteredSinkReturnsEveryMessageOnce(InputQueueType.RING_BUFFER);
+    }
+
+    @Test
+    public void stripedReturnsFilteredMessagesOnce() throws InterruptedException {
+        filteredSinkReturnsEveryMessageOnce(InputQueueType.STRIPED);
+    }
+
+    @Test
+    public void dropOldestReturnsDroppedMessagesOnce() {
+        CountingPool pool = new CountingPool();
+        QueueHandler handler = new QueueHandler() {};
+        handler.setBackpressurePolicy(BackpressurePolicy.DROP_OLDEST);
+        handler.setCapacity(2);
+        handler.setEnable(true);
+
+        List<MutableLogData> offered = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            MutableLogData logData = pool.acquire().append("message-" + i);
+            offered.add(logData);
+            handler.offer(logData);
+        }
+
+        //  Три самых старых сообщения вытеснены и возвращены в пул, два последних еще в очереди
+        assertEquals(3, handler.getDroppedCount());
+        for (int i = 0; i < 3; i++) assertEquals(1, pool.recycledCount(offered.get(i)));
+        for (int i = 3; i < 5; i++) assertEquals(0, pool.recycledCount(offered.get(i)));
+
+        LogData logData;
+        while ((logData = handler.queue.poll()) != null) logData.release();
+        pool.assertRecycledOnce(offered);
+    }
+
+    @Test
+    public void disabledRingCursorKeepsItsMessages() throws InterruptedException {
+        CountingPool pool = new CountingPool();
+        logger = new BetaLogger(InputQueueType.RING_BUFFER, 64);
+        RecordingSink disabled = addSink("disabled");
+        RecordingSink other = addSink("other");
+        logger.start();
+
+        //  Сообщений меньше, чем ячеек буфера: все они остаются в буфере до повторной регистрации курсора
+        logger.unsetLogging(disabled.getName());
+        List<MutableLogData> offered = addMessages(pool, 32);
+        other.awaitMessages(offered.size());
+        Thread.sleep(50);
+        assertEquals("messages owned by the disabled cursor are not recycled", 0, pool.recycledTotal());
+
+        //  При повторной регистрации курсор освобождает пропущенные сообщения
+        logger.setSinkLogging(disabled);
+        pool.awaitRecycled(offered.size());
+        pool.assertRecycledOnce(offered);
+        assertTrue(disabled.messages().isEmpty());
+    }
+
+
+    private void twoSinksReturnEveryMessageOnce(InputQueueType inputQueueType) throws InterruptedException {
+        CountingPool pool = new CountingPool();
+        logger = new BetaLogger(inputQueueType);
+        RecordingSink first = addSink("first");
+        RecordingSink second = addSink("second");
+        logger.start();
+
+        List<MutableLogData> offered = addMessages(pool, MESSAGES);
+        first.awaitMessages(MESSAGES);
+        second.awaitMessages(MESSAGES);
+        pool.awaitRecycled(MESSAGES);
+        Thread.sleep(50);
+        pool.assertRecycledOnce(offered);
+    }
+
+    /**
+     * Сообщения ниже порога и не прошедшие маршрут отбрасываются перед логирующей очередью(распределителем или курсором),
+     * поэтому возвращаются в пул другим путем, чем записанные
+     */
+    private void filteredSinkReturnsEveryMessageOnce(InputQueueType inputQueueType) throws InterruptedException {
+        CountingPool pool = new CountingPool();
+        logger = new BetaLogger(inputQueueType);
+        RecordingSink all = addSink("all");
+        RecordingSink filtered = addSink("filtered");
+        logger.setLoggingLevel(filtered.getName(), Level.WARN);
+        logger.setLoggingRoute(filtered.getName(), Routes.tag("audit"));
+        logger.start();
+
+        List<MutableLogData> offered = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            MutableLogData logData = pool.acquire().append("message-" + i);
+            switch (i % 3) {
+                case 0: logData.setLevel(Level.INFO).setTag("audit"); break;
+                case 1: logData.setLevel(Level.WARN); break;
+                default: logData.setLevel(Level.WARN).setTag("audit"); expected.add("message-" + i);
+            }
+            offered.add(logData);
+            logger.add(logData);
+        }
+
+        all.awaitMessages(MESSAGES);
+        filtered.awaitMessages(expected.size());
+        pool.awaitRecycled(MESSAGES);
+        Thread.sleep(50);
+        assertEquals(expected, filtered.messages());
+        pool.assertRecycledOnce(offered);
+    }
+
+    private RecordingSink addSink(String name) {
+        RecordingSink sink = new RecordingSink(name);
+        logger.setSinkLogging(sink);
+        logger.setLoggingQueuePollPeriod(name, 1);
+        return sink;
+    }
+
+    private List<MutableLogData> addMessages(CountingPool pool, int count) {
+        List<MutableLogData> offered = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MutableLogData logData = pool.acquire().append("message-" + i);
+            offered.add(logData);
+            logger.add(logData);
+        }
+        return offered;
+    }
+
+
+    /** Пул, запоминающий, сколько раз возвращался каждый объект. Возвращенные объекты повторно не выдаются */
+    private static class CountingPool extends LogDataPool {
+        private final Map<MutableLogData, AtomicInteger> recycled = new ConcurrentHashMap<>();
+
+        CountingPool() {
+            super(1);
+        }
+
+        @Override
+        void recycle(MutableLogData logData) {
+            recycled.computeIfAbsent(logData, k -> new AtomicInteger()).incrementAndGet();
+        }
+
+        int recycledCount(MutableLogData logData) {
+            AtomicInteger count = recycled.get(logData);
+            return count == null ? 0 : count.get();
+        }
+
+        int recycledTotal() {
+            int total = 0;
+            for (AtomicInteger count: recycled.values()) total += count.get();
+            return total;
+        }
+
+        void awaitRecycled(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+            while (recycledTotal() < count && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        }
+
+        void assertRecycledOnce(List<MutableLogData> offered) {
+            for (MutableLogData logData: offered) assertEquals(1, recycledCount(logData));
+            assertEquals(offered.size(), recycledTotal());
+        }
+    }
+
+    /** Место назначения, запоминающее тексты сообщений */
+    private static class RecordingSink implements LogSink {
+        private final String name;
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingSink(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void onBatch(List<LogData> batch) {
+            for (LogData logData: batch) messages.add(logData.getStringForLogging());
+        }
+
+        List<String> messages() {
+            synchronized (messages) {
+                return new ArrayList<>(messages);
+            }
+        }
+
+        void awaitMessages(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+            while (messages().size() < count && System.currentTimeMillis() < deadline) Thread.sleep(1);
+            assertTrue(name + " received " + messages().size(), messages().size() >= count);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package dk.betalogger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка подавления лавины сообщений: ограничение частоты и схлопывание повторов.
+ */
+public class LogSuppressorTest {
+
+    /** Скорость пополнения, при которой за время теста ведро не пополняется */
+    private static final double SLOW_RATE = 0.001;
+
+    private final LogSuppressor suppressor = new LogSuppressor();
+
+    private final List<String> passed = new ArrayList<>();
+
+    private final AddingToQueue out = logData -> passed.add(logData.getStringForLogging());
+
+    @Test
+    public void rateLimitedMessageDoesNotBecomePrevious() {
+        suppressor.setRateLimit(SLOW_RATE, 1);
+        suppressor.setDuplicateWindow(60_000);
+
+        offer("B");
+        offer("A");
+        //  У текста B жетонов не осталось: сообщение подавлено и не должно стать предыдущим для схлопывания повторов
+        offer("B");
+        offer("B");
+        //  Поэтому A - повтор последнего прошедшего сообщения, а не новое сообщение после серии повторов B
+        offer("A");
+
+        assertEquals(Arrays.asList("B", "A"), passed);
+        assertEquals(3, suppressor.getSuppressedCount());
+
+        //  Сводка относится к повтору A
+        suppressor.setDuplicateWindow(0);
+        offer("C");
+        assertEquals(Arrays.asList("B", "A", "Last message repeated 1 times", "C"), passed);
+    }
+
+    @Test
+    public void rateLimitByTextKeepsKeysOfEarlierMessages() {
+        suppressor.setRateLimit(SLOW_RATE, 1);
+
+        //  Текст каждого сообщения формируется в один и тот же буфер: ведро должно хранить копию ключа
+        offer("X");
+        offer("Y");
+        offer("X");
+        offer("Y");
+        offer("Z");
+
+        assertEquals(Arrays.asList("X", "Y", "Z"), passed);
+        assertEquals(2, suppressor.getSuppressedCount());
+    }
+
+    @Test
+    public void rateLimitByTextWithDuplicateCollapsing() {
+        suppressor.setRateLimit(SLOW_RATE, 2);
+        suppressor.setDuplicateWindow(60_000);
+
+        offer("X");
+        offer("Y");
+        offer("X");
+        offer("Y");
+        offer("X");
+
+        assertEquals(Arrays.asList("X", "Y", "X", "Y"), passed);
+        assertEquals(1, suppressor.getSuppressedCount());
+    }
+
+
+    private void offer(String text) {
+        suppressor.offer(new MutableLogData(null).reset().append(text), out);
+    }
+}
@@ -0,0 +1,339 @@
+package dk.betalogger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка передачи логов по сети на локальных получателях: {@link ServerSocketChannel} для TCP и {@link DatagramChannel} для UDP.
+ * Очередь обслуживается вызовом {@link QueueHandler#threadCode} в потоке теста.
+ */
+public class NetworkQueueHandlerTest {
+
+    /** 2021-03-04 05:06:07.089 UTC */
+    private static final long EPOCH_MILLIS = 1_614_834_367_089L;
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /** Время ожидания данных на стороне получателя */
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+
+    private NetworkQueueHandler handler;
+
+    /** Открытые тестом каналы. Закрываются после каждого теста */
+    private final List<Channel> channels = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        handler = new NetworkQueueHandler();
+        handler.setEnable(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        handler.threadStopCode.run();
+        for (Channel channel: channels) channel.close();
+    }
+
+    @Test
+    public void tcpLinesAreNewlineDelimited() throws IOException {
+        ServerSocketChannel server = listenTcp(0);
+        handler.setAddress(NetworkProtocol.TCP, "127.0.0.1", portOf(server));
+        write(Level.INFO, "first", "второй 😀");
+
+        InputStream in = accept(server);
+        String time = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss.SSS")
+                .format(Instant.ofEpochMilli(EPOCH_MILLIS).atZone(ZoneId.systemDefault()));
+        byte[] expected = (time + "  first\n" + time + "  второй 😀\n").getBytes(StandardCharsets.UTF_8);
+        byte[] actual = new byte[expected.length];
+        new DataInputStream(in).readFully(actual);
+        assertArrayEquals(expected, actual);
+        assertEquals(2, handler.getMetrics().getWrittenCount());
+    }
+
+    @Test
+    public void tcpSyslogUsesOctetCounting() throws IOException {
+        ServerSocketChannel server = listenTcp(0);
+        handler.setAddress(NetworkProtocol.TCP, "127.0.0.1", portOf(server));
+        handler.setFraming(NetworkFraming.SYSLOG);
+        handler.setSyslog(16, "my app");
+        writeTagged(Level.WARN, "db", "first", "второй");
+
+        DataInputStream in = new DataInputStream(accept(server));
+        for (String message: new String[] {"first", "второй"}) {
+            byte[] frame = readOctetCounted(in);
+            assertSyslogMessage(frame, 16 * 8 + 4, "my_app", "db", message);
+        }
+    }
+
+    @Test
+    public void udpLinesArePackedIntoDatagrams() throws IOException {
+        DatagramChannel receiver = listenUdp();
+        handler.setAddress(NetworkProtocol.UDP, "127.0.0.1", portOf(receiver));
+        handler.setDatagramSize(200);
+        String[] messages = new String[10];
+        for (int i = 0; i < messages.length; i++) messages[i] = "message " + i + " padded to forty bytes";
+        write(Level.INFO, messages);
+
+        List<byte[]> datagrams = receiveAll(receiver);
+        assertTrue("datagrams: " + datagrams.size(), datagrams.size() > 1 && datagrams.size() < messages.length);
+        List<String> lines = new ArrayList<>();
+        for (byte[] datagram: datagrams) {
+            assertTrue("datagram size " + datagram.length, datagram.length <= 200);
+            assertEquals("datagram holds whole lines", '\n', datagram[datagram.length - 1]);
+            lines.addAll(Arrays.asList(new String(datagram, StandardCharsets.UTF_8).split("\n")));
+        }
+        assertEquals(messages.length, lines.size());
+        for (int i = 0; i < messages.length; i++) assertTrue(lines.get(i).endsWith("  " + messages[i]));
+    }
+
+    @Test
+    public void udpSyslogSendsOneMessagePerDatagram() throws IOException {
+        DatagramChannel receiver = listenUdp();
+        handler.setAddress(NetworkProtocol.UDP, "127.0.0.1", portOf(receiver));
+        handler.setFraming(NetworkFraming.SYSLOG);
+        write(Level.ERROR, "first", "second", "third");
+
+        List<byte[]> datagrams = receiveAll(receiver);
+        assertEquals(3, datagrams.size());
+        assertSyslogMessage(datagrams.get(0), NetworkQueueHandler.DEFAULT_FACILITY * 8 + 3, "-", "-", "first");
+        assertSyslogMessage(datagrams.get(2), NetworkQueueHandler.DEFAULT_FACILITY * 8 + 3, "-", "-", "third");
+    }
+
+    @Test
+    public void udpTruncatesLongMessageAtCharacterBoundary() throws IOException {
+        DatagramChannel receiver = listenUdp();
+        handler.setAddress(NetworkProtocol.UDP, "127.0.0.1", portOf(receiver));
+        handler.setDatagramSize(65);
+        char[] text = new char[100];
+        Arrays.fill(text, 'ж');
+        write(Level.INFO, new String(text));
+
+        //  Строка: штамп времени(23 байта), два пробела и двухбайтовые символы. 64 байта до перевода строки рвали бы символ
+        List<byte[]> datagrams = receiveAll(receiver);
+        assertEquals(1, datagrams.size());
+        byte[] datagram = datagrams.get(0);
+        assertEquals(64, datagram.length);
+        assertEquals('\n', datagram[datagram.length - 1]);
+        String line = decodeStrict(datagram);
+        assertTrue(line, line.endsWith("  " + new String(text, 0, 19) + "\n"));
+
+        handler.setFraming(NetworkFraming.SYSLOG);
+        write(Level.INFO, new String(text));
+        datagrams = receiveAll(receiver);
+        assertEquals(1, datagrams.size());
+        assertTrue(datagrams.get(0).length <= 65);
+        decodeStrict(datagrams.get(0));
+    }
+
+    @Test
+    public void reconnectsWhenListenerRestarts() throws IOException, InterruptedException {
+        ServerSocketChannel server = listenTcp(0);
+        int port = portOf(server);
+        handler.setAddress(NetworkProtocol.TCP, "127.0.0.1", port);
+        write(Level.INFO, "before restart");
+        InputStream in = accept(server);
+        assertTrue(readLine(in).endsWith("  before restart"));
+
+        //  Получатель перезапускается: соединение закрыто с его стороны, на том же порту - новый слушатель
+        in.close();
+        server.close();
+        ServerSocketChannel restarted = listenTcp(port);
+        Thread.sleep(50);
+
+        write(Level.INFO, "after restart");
+        assertTrue(readLine(accept(restarted)).endsWith("  after restart"));
+        assertEquals(0, handler.getMetrics().getWriteErrorCount());
+        assertEquals(2, handler.getMetrics().getWrittenCount());
+    }
+
+    @Test
+    public void writeTimesOutWhenReceiverDoesNotRead() throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        channels.add(server);
+        server.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+        server.bind(new InetSocketAddress(LOOPBACK, 0));
+        handler.setAddress(NetworkProtocol.TCP, "127.0.0.1", portOf(server));
+        handler.ioTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+        //  Получатель принимает соединение, но не читает: буферы сокетов заполняются, и запись ждет места до таймаута
+        char[] filler = new char[8 * 1024];
+        Arrays.fill(filler, 'x');
+        String message = new String(filler);
+        String[] batch = new String[1024];
+        Arrays.fill(batch, message);
+        for (int i = 0; i < 20 && handler.getMetrics().getWriteErrorCount() == 0; i++) {
+            write(Level.INFO, batch);
+            if (i == 0) channels.add(server.accept());
+        }
+
+        assertEquals(1, handler.getMetrics().getWriteErrorCount());
+        assertTrue(handler.getDroppedCount() > 0);
+    }
+
+    @Test
+    public void connectTimesOutWhenBacklogIsFull() throws IOException, InterruptedException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        channels.add(server);
+        server.bind(new InetSocketAddress(LOOPBACK, 0), 1);
+        InetSocketAddress address = new InetSocketAddress(LOOPBACK, portOf(server));
+
+        //  Слушатель не принимает соединения. Когда очередь соединений заполнена, новые попытки соединиться не завершаются
+        boolean backlogFull = false;
+        for (int i = 0; i < 10 && !backlogFull; i++) {
+            SocketChannel filler = SocketChannel.open();
+            channels.add(filler);
+            filler.configureBlocking(false);
+            filler.connect(address);
+            Thread.sleep(50);
+            backlogFull = filler.finishConnect() == false;
+        }
+        assertTrue(backlogFull);
+
+        handler.setAddress(NetworkProtocol.TCP, "127.0.0.1", address.getPort());
+        handler.ioTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(200);
+        long start = System.nanoTime();
+        write(Level.INFO, "lost");
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, handler.getMetrics().getWriteErrorCount());
+        assertEquals(1, handler.getDroppedCount());
+        assertTrue("elapsed " + elapsed, elapsed >= 190 && elapsed < READ_TIMEOUT_MILLIS);
+    }
+
+
+    /** Передать сообщения в очередь и выполнить один проход потока, обслуживающего очередь */
+    private void write(Level level, String... messages) {
+        writeTagged(level, null, messages);
+    }
+
+    private void writeTagged(Level level, String tag, String... messages) {
+        for (String message: messages) {
+            MutableLogData logData = new MutableLogData(null).reset().setLevel(level).setTag(tag).append(message);
+            logData.epochMillis = EPOCH_MILLIS;
+            handler.offer(logData);
+        }
+        handler.threadCode.run();
+    }
+
+    /** Проверить сообщение syslog: заголовок по RFC 5424, метка порядка байт и текст */
+    private static void assertSyslogMessage(byte[] frame, int priority, String appName, String msgId, String text) {
+        String header = "<" + priority + ">1 2021-03-04T05:06:07.089Z ";
+        String message = new String(frame, StandardCharsets.UTF_8);
+        assertTrue(message, message.startsWith(header));
+
+        String[] fields = message.substring(header.length()).split(" ", 5);
+        assertFalse("hostname", fields[0].isEmpty());
+        assertEquals(appName, fields[1]);
+        assertEquals(String.valueOf(ProcessHandle.current().pid()), fields[2]);
+        assertEquals(msgId, fields[3]);
+
+        byte[] body = ("- " + new String(BOM, StandardCharsets.ISO_8859_1)).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        byte[] tail = Arrays.copyOfRange(frame, frame.length - body.length - textBytes.length, frame.length);
+        byte[] expected = Arrays.copyOf(body, body.length + textBytes.length);
+        System.arraycopy(textBytes, 0, expected, body.length, textBytes.length);
+        assertArrayEquals(expected, tail);
+    }
+
+    /** Прочитать сообщение с префиксом длины(octet counting) */
+    private static byte[] readOctetCounted(DataInputStream in) throws IOException {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != ' ') {
+            assertTrue("digit expected: " + b, b >= '0' && b <= '9');
+            length = length * 10 + (b - '0');
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            assertTrue("unexpected end of stream", b >= 0);
+            line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    private static String decodeStrict(byte[] bytes) throws CharacterCodingException {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(bytes)).toString();
+    }
+
+    private ServerSocketChannel listenTcp(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        channels.add(server);
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(new InetSocketAddress(LOOPBACK, port));
+        return server;
+    }
+
+    /** Принять соединение и вернуть поток чтения. Ожидание соединения и чтение - с таймаутом */
+    private InputStream accept(ServerSocketChannel server) throws IOException {
+        server.socket().setSoTimeout(READ_TIMEOUT_MILLIS);
+        SocketChannel client = server.socket().accept().getChannel();
+        channels.add(client);
+        client.socket().setSoTimeout(READ_TIMEOUT_MILLIS);
+        return new BufferedInputStream(client.socket().getInputStream());
+    }
+
+    private DatagramChannel listenUdp() throws IOException {
+        DatagramChannel receiver = DatagramChannel.open();
+        channels.add(receiver);
+        receiver.bind(new InetSocketAddress(LOOPBACK, 0));
+        receiver.configureBlocking(false);
+        return receiver;
+    }
+
+    /** Забрать все полученные датаграммы. На локальном интерфейсе датаграммы доставляются к моменту возврата из send() */
+    private static List<byte[]> receiveAll(DatagramChannel receiver) throws IOException {
+        List<byte[]> datagrams = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        while (receiver.receive(buffer) != null) {
+            buffer.flip();
+            byte[] datagram = new byte[buffer.remaining()];
+            buffer.get(datagram);
+            datagrams.add(datagram);
+            buffer.clear();
+        }
+        return datagrams;
+    }
+
+    private static int portOf(NetworkChannel channel) throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+}
@@ -0,0 +1,269 @@
+package dk.betalogger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка данных, которые логирование в PostgreSQL передает в команду COPY, без сервера PostgreSQL:
+ * соединение выдает драйвер-заглушка, а поток COPY - записывающая фабрика {@link RecordingCopyStreamFactory}.
+ */
+public class PostgreDbQueueHandlerTest {
+
+    private static final String URL = "jdbc:betalogger-stub:test";
+
+    /** 2021-03-04 05:06:07.089 UTC */
+    private static final long EPOCH_MILLIS = 1_614_834_367_089L;
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    /** Количество соединений, закрытых логером */
+    private static int closedConnections;
+
+    private PostgreDbQueueHandler handler;
+    private RecordingCopyStreamFactory factory;
+
+    @BeforeClass
+    public static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(new StubDriver());
+    }
+
+    @Before
+    public void setUp() {
+        closedConnections = 0;
+        factory = new RecordingCopyStreamFactory();
+        handler = new PostgreDbQueueHandler();
+        handler.copyStreamFactory = factory;
+        handler.setDbUrl(URL).setUser("user").setPassword("password").setTable("log");
+        handler.setEnable(true);
+    }
+
+    @After
+    public void tearDown() {
+        handler.threadStopCode.run();
+    }
+
+    @Test
+    public void textFormatEscapesSpecialCharacters() {
+        write("a\\b\tc\nd\re", "привет 😀");
+
+        assertEquals(Arrays.asList("COPY log (time,message) FROM STDIN"), factory.sqls);
+        RecordingCopyStream stream = factory.streams.get(0);
+        assertTrue(stream.ended);
+        assertFalse(stream.cancelled);
+
+        String time = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+                .format(Instant.ofEpochMilli(EPOCH_MILLIS).atZone(ZoneId.systemDefault()));
+        String expected = time + "\ta\\\\b\\tc\\nd\\re\n"
+                + time + "\tпривет 😀\n";
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), stream.data.toByteArray());
+    }
+
+    @Test
+    public void binaryFormatEncodesHeaderRowsAndTrailer() throws IOException {
+        handler.setCopyFormat(CopyFormat.BINARY);
+        write("first", "второй\tс табуляцией");
+
+        assertEquals(Arrays.asList("COPY log (time,message) FROM STDIN WITH (FORMAT binary)"), factory.sqls);
+        RecordingCopyStream stream = factory.streams.get(0);
+        assertTrue(stream.ended);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream.data.toByteArray()));
+        byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        assertArrayEquals(SIGNATURE, signature);
+        assertEquals("flags", 0, in.readInt());
+        assertEquals("header extension length", 0, in.readInt());
+
+        //  TIMESTAMP без часового пояса: местное время в микросекундах от 2000-01-01 00:00:00
+        long offsetMillis = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(EPOCH_MILLIS)).getTotalSeconds() * 1000L;
+        long expectedMicros = (EPOCH_MILLIS + offsetMillis - 946_684_800_000L) * 1000L;
+
+        for (String message: new String[] {"first", "второй\tс табуляцией"}) {
+            assertEquals("field count", 2, in.readShort());
+            assertEquals("time length", 8, in.readInt());
+            assertEquals(expectedMicros, in.readLong());
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            assertEquals("message length", text.length, in.readInt());
+            byte[] actual = new byte[text.length];
+            in.readFully(actual);
+            assertArrayEquals(text, actual);
+        }
+        assertEquals("trailer", -1, in.readShort());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void largeBatchIsSplitIntoChunks() {
+        String[] messages = new String[2000];
+        char[] filler = new char[100];
+        Arrays.fill(filler, 'x');
+        for (int i = 0; i < messages.length; i++) messages[i] = i + new String(filler);
+        write(messages);
+
+        assertEquals("one COPY command per batch", 1, factory.streams.size());
+        RecordingCopyStream stream = factory.streams.get(0);
+        assertTrue("chunks: " + stream.writeSizes, stream.writeSizes.size() > 1);
+        for (int i = 0; i < stream.writeSizes.size() - 1; i++) {
+            int size = stream.writeSizes.get(i);
+            assertTrue("chunk size " + size, size >= 64 * 1024 && size < 64 * 1024 + 200);
+        }
+
+        String[] lines = new String(stream.data.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(messages.length, lines.length);
+        for (int i = 0; i < messages.length; i++) {
+            assertTrue(lines[i].endsWith("\t" + messages[i]));
+        }
+    }
+
+    @Test
+    public void failedWriteCancelsCopyAndClosesConnection() {
+        factory.failWrites = true;
+        write("lost");
+
+        RecordingCopyStream stream = factory.streams.get(0);
+        assertTrue(stream.cancelled);
+        assertFalse(stream.ended);
+        assertEquals(1, closedConnections);
+        assertEquals(1, handler.getMetrics().getWriteErrorCount());
+        assertEquals(1, handler.getDroppedCount());
+
+        //  После ошибки соединение устанавливается заново, и следующая порция записывается новой командой COPY
+        factory.failWrites = false;
+        handler.setAddToQueue(true);
+        write("next");
+        assertEquals(2, factory.streams.size());
+        assertTrue(factory.streams.get(1).ended);
+    }
+
+
+    /** Передать сообщения в очередь и выполнить один проход потока, обслуживающего очередь */
+    private void write(String... messages) {
+        for (String message: messages) {
+            MutableLogData logData = new MutableLogData(null).reset().append(message);
+            logData.epochMillis = EPOCH_MILLIS;
+            handler.offer(logData);
+        }
+        handler.threadCode.run();
+    }
+
+
+    /** Фабрика, записывающая команды и данные COPY */
+    private static class RecordingCopyStreamFactory implements CopyStreamFactory {
+        final List<String> sqls = new ArrayList<>();
+        final List<RecordingCopyStream> streams = new ArrayList<>();
+        boolean failWrites = false;
+
+        @Override
+        public CopyStream open(Connection connection, String sql) {
+            sqls.add(sql);
+            RecordingCopyStream stream = new RecordingCopyStream(failWrites);
+            streams.add(stream);
+            return stream;
+        }
+    }
+
+    private static class RecordingCopyStream implements CopyStream {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final List<Integer> writeSizes = new ArrayList<>();
+        final boolean failWrites;
+        boolean ended = false;
+        boolean cancelled = false;
+
+        RecordingCopyStream(boolean failWrites) {
+            this.failWrites = failWrites;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws SQLException {
+            if (failWrites) throw new SQLException("stub write failure");
+            data.write(bytes, offset, length);
+            writeSizes.add(length);
+        }
+
+        @Override
+        public long end() {
+            ended = true;
+            return 0;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /** Драйвер-заглушка: выдает соединения, которые умеют только закрываться */
+    private static class StubDriver implements Driver {
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close": closedConnections++; return null;
+                            case "isClosed": return false;
+                            case "hashCode": return System.identityHashCode(proxy);
+                            case "equals": return proxy == args[0];
+                            case "toString": return "StubConnection";
+                            default: throw new SQLFeatureNotSupportedException(method.getName());
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:betalogger-stub:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dk.betalogger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка логирующей очереди управляющего объекта без потока, обслуживающего очередь.
+ */
+public class QueueHandlerTest {
+
+    /** Гонка проявляется не на каждом прогоне, поэтому сценарий повторяется */
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void capacityChangeWhileOfferingLosesNoMessages() throws InterruptedException {
+        for (int round = 0; round < ROUNDS; round++) capacityChangeRound();
+    }
+
+    private void capacityChangeRound() throws InterruptedException {
+        QueueHandler handler = new QueueHandler() {};
+        handler.setCapacity(0);
+        handler.setEnable(true);
+
+        int producers = 4;
+        int perProducer = 50_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) handler.offer(new MutableLogData(null).reset());
+            });
+            threads.add(thread);
+        }
+
+        //  Емкость переключается между неограниченной и заведомо достаточной, пока производители добавляют сообщения
+        AtomicBoolean done = new AtomicBoolean(false);
+        Thread changer = new Thread(() -> {
+            boolean bounded = false;
+            while (!done.get()) {
+                handler.setCapacity(bounded ? 0 : producers * perProducer);
+                bounded = !bounded;
+            }
+        });
+        changer.start();
+        for (Thread thread: threads) thread.start();
+        for (Thread thread: threads) thread.join();
+        done.set(true);
+        changer.join();
+
+        int count = 0;
+        while (handler.queue.poll() != null) count++;
+        assertEquals(0, handler.getDroppedCount());
+        assertEquals(producers * perProducer, count);
+    }
+}
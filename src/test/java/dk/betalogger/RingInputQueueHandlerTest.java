@@ -0,0 +1,111 @@
+package dk.betalogger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка входной очереди на кольцевом буфере через логер: виды логирования читают буфер каждый своим курсором.
+ */
+public class RingInputQueueHandlerTest {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    private BetaLogger logger;
+    private RecordingSink sink;
+
+    /** Вид логирования, который остается включенным: без него сообщения отбрасывались бы еще в add() */
+    private RecordingSink other;
+
+    @Before
+    public void setUp() {
+        logger = new BetaLogger(InputQueueType.RING_BUFFER, 64);
+        sink = new RecordingSink("recording");
+        logger.setSinkLogging(sink);
+        logger.setLoggingQueuePollPeriod(sink.getName(), 1);
+        other = new RecordingSink("other");
+        logger.setSinkLogging(other);
+        logger.setLoggingQueuePollPeriod(other.getName(), 1);
+        logger.start();
+    }
+
+    @After
+    public void tearDown() {
+        logger.stop();
+    }
+
+    @Test
+    public void reenabledSinkDoesNotReceiveMessagesPublishedWhileDisabled() throws InterruptedException {
+        logger.add("before");
+        awaitMessages(1);
+
+        logger.unsetLogging(sink.getName());
+        logger.add("while-disabled-1");
+        logger.add("while-disabled-2");
+        logger.setSinkLogging(sink);
+        logger.add("after");
+        awaitMessages(2);
+
+        Thread.sleep(50);
+        assertEquals(Arrays.asList("before", "after"), sink.messages());
+    }
+
+    @Test
+    public void reenabledSinkContinuesAfterBufferWrapped() throws InterruptedException {
+        logger.add("before");
+        awaitMessages(1);
+
+        //  Пока вид логирования выключен, производители обходят буфер несколько раз
+        logger.unsetLogging(sink.getName());
+        for (int i = 0; i < 200; i++) logger.add("while-disabled-" + i);
+        logger.setSinkLogging(sink);
+        for (int i = 0; i < 100; i++) logger.add("after-" + i);
+        awaitMessages(101);
+
+        List<String> messages = sink.messages();
+        assertEquals("before", messages.get(0));
+        for (int i = 0; i < 100; i++) assertEquals("after-" + i, messages.get(i + 1));
+        assertEquals(0, logger.getLoggingQueueDroppedCount(sink.getName()));
+    }
+
+
+    private void awaitMessages(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (sink.messages().size() < count && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        assertTrue("received " + sink.messages(), sink.messages().size() >= count);
+    }
+
+
+    /** Место назначения, запоминающее тексты сообщений */
+    private static class RecordingSink implements LogSink {
+        private final String name;
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingSink(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void onBatch(List<LogData> batch) {
+            for (LogData logData: batch) messages.add(logData.getStringForLogging());
+        }
+
+        List<String> messages() {
+            synchronized (messages) {
+                return new ArrayList<>(messages);
+            }
+        }
+    }
+}